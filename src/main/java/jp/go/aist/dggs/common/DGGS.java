@@ -258,4 +258,40 @@ public final class DGGS {
     static final double[][] A           = {{1, (-1 / Math.sqrt(3))}, {1, (1 / Math.sqrt(3))}};
     public static final RealMatrix MATRIX_A    = MatrixUtils.createRealMatrix(A);
     public static final RealMatrix MATRIX_A_INVERSE = MatrixUtils.blockInverse(MATRIX_A, 0);
+    public static final double RHOMBUS_EDGE     = NEW_ORIG_X * -2;           // Edge of a rhombus face, Unit = face unit
+    public static final double METER_UNIT       = 0.00166282891483159;       // Nominal meters per step at MAX_XY_RESOLUTION
+    public static final double METERS_PER_DEGREE = 111319.49;              // Meters per degree of the equator (WGS 84)
+
+    // Per-resolution constants, indexed by resolution from 0 to MAX_XY_RESOLUTION.
+    // Z has (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION) resolutions less than X and Y.
+    public static final long[] MAX_XY_AT_RESOLUTION             = new long[MAX_XY_RESOLUTION + 1];     // 2^res - 1
+    public static final long[] MAX_Z_AT_RESOLUTION              = new long[MAX_XY_RESOLUTION + 1];     // 2^(res - 8) - 1, or 0
+    public static final double[] CELL_SIZE_AT_RESOLUTION        = new double[MAX_XY_RESOLUTION + 1];   // Unit = face unit
+    public static final double[] CELL_SIZE_METER_AT_RESOLUTION  = new double[MAX_XY_RESOLUTION + 1];   // Unit = nominal meter
+    public static final double[] CELL_HEIGHT_AT_RESOLUTION      = new double[MAX_XY_RESOLUTION + 1];   // Unit = meter
+    static {
+        for (int res = 0; res <= MAX_XY_RESOLUTION; res++) {
+            int zRes = Math.max(0, res - (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION));
+            MAX_XY_AT_RESOLUTION[res] = (1L << res) - 1;
+            MAX_Z_AT_RESOLUTION[res] = res < (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION) ? 0 : (1L << zRes) - 1;
+            CELL_SIZE_AT_RESOLUTION[res] = RHOMBUS_EDGE / (1L << res);
+            CELL_SIZE_METER_AT_RESOLUTION[res] = METER_UNIT * (1L << (MAX_XY_RESOLUTION - res));
+            CELL_HEIGHT_AT_RESOLUTION[res] = (H_RANGE * 2.0d) / (1L << zRes);
+        }
+    }
+
+    // Triangle faces of the icosahedron (0 to 19) to rhombus faces (0 to 9), and back.
+    // A rhombus consists of an upward triangle (Y >= 0 on the rhombus) and a downward triangle (Y < 0).
+    public static final int[] TRIANGLE_TO_RHOMBUS          = {0, 2, 4, 6, 8, 0, 2, 4, 6, 8, 1, 3, 5, 7, 9, 1, 3, 5, 7, 9};
+    public static final int[] RHOMBUS_TO_UPPER_TRIANGLE    = {0, 10, 1, 11, 2, 12, 3, 13, 4, 14};
+    public static final int[] RHOMBUS_TO_LOWER_TRIANGLE    = {5, 15, 6, 16, 7, 17, 8, 18, 9, 19};
+
+    // For packed (64-bit) PD code: [0 (1 bit)][face (4 bits)][interleaved bits (54 bits)][resolution (5 bits)]
+    public static final int PACKED_RESOLUTION_BITS      = 5;
+    public static final long PACKED_RESOLUTION_MASK     = 0x1F;
+    public static final int PACKED_MORTON_BITS          = 54;
+    public static final int PACKED_FACE_SHIFT           = PACKED_RESOLUTION_BITS + PACKED_MORTON_BITS;
+    public static final long PACKED_FACE_MASK           = 0x0F;
+    public static final int MAX_PACKED_2D_RESOLUTION    = 27;   // 2 bits per level
+    public static final int MAX_PACKED_3D_RESOLUTION    = 20;   // 2 bits per level until Z starts, then 3 bits per level
 }
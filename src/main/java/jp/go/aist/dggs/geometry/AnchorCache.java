@@ -0,0 +1,103 @@
+package jp.go.aist.dggs.geometry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Direct-mapped cache of the orthogonal anchors (lower corners) of local faces, keyed by a unique key of the local face.
+ * A conflicting local face replaces the cached one. Entries are immutable, so the cache can be shared by threads;
+ * a race only results in a miss.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class AnchorCache {
+    private final Entry[] _entries;
+    private final int _shift;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    static final class Entry {
+        final long key;
+        final long x;
+        final long y;
+
+        Entry(long key, long x, long y) {
+            this.key = key;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * @param bits the cache holds 2^bits entries
+     */
+    AnchorCache(int bits) {
+        this._entries = new Entry[1 << bits];
+        this._shift = Integer.SIZE - bits;
+    }
+
+    /**
+     * @param key unique key of the local face
+     * @return cached anchor, or null if the local face is not cached
+     */
+    Entry get(long key) {
+        Entry e = this._entries[this._index(key)];
+        if (e != null && e.key == key) {
+            this._hits.increment();
+            return e;
+        }
+        this._misses.increment();
+        return null;
+    }
+
+    /**
+     * @param key unique key of the local face
+     * @param x   orthogonal X of the anchor
+     * @param y   orthogonal Y of the anchor
+     * @return the new entry
+     */
+    Entry put(long key, long x, long y) {
+        Entry e = new Entry(key, x, y);
+        this._entries[this._index(key)] = e;
+        return e;
+    }
+
+    private int _index(long key) {
+        return ((int) (key ^ (key >>> 32)) * 0x9E3779B9) >>> this._shift;
+    }
+
+    /**
+     * @return number of lookups answered by the cache since the last reset
+     */
+    public long hits() {
+        return this._hits.sum();
+    }
+
+    /**
+     * @return number of lookups that computed the anchor since the last reset
+     */
+    public long misses() {
+        return this._misses.sum();
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return this._entries.length;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        for (int i = 0; i < this._entries.length; i++) this._entries[i] = null;
+    }
+
+    /**
+     * Resets the hit and miss counters; the cached entries are kept.
+     */
+    public void resetStatistics() {
+        this._hits.reset();
+        this._misses.reset();
+    }
+}
@@ -1,11 +1,7 @@
 package jp.go.aist.dggs.geometry;
 
 import jp.go.aist.dggs.common.DGGS;
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
-
-import static jp.go.aist.dggs.common.DGGS.MATRIX_A;
-import static jp.go.aist.dggs.common.DGGS.MATRIX_A_INVERSE;
+import jp.go.aist.dggs.utils.SkewTransform;
 
 /**
  * Cartesian Coordinates of a location on a face of a platonic solid.
@@ -87,16 +83,29 @@ public class ISEA4DFaceCoordinates {
     }
 
     public long getMaxX() {
-        return Double.valueOf(Math.pow(2,_res) - 1).longValue();
+        return DGGS.MAX_XY_AT_RESOLUTION[_res];
     }
 
     public long getMaxY() {
-        return Double.valueOf(Math.pow(2,_res) - 1).longValue();
+        return DGGS.MAX_XY_AT_RESOLUTION[_res];
     }
 
     public long getMaxZ() {
-        return _res < (DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION) ?
-                0 : Double.valueOf(Math.pow(2, (_res - (DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION))) - 1).longValue();
+        return DGGS.MAX_Z_AT_RESOLUTION[_res];
+    }
+
+    /**
+     * @return edge length of a cell at this resolution (UoM: face unit)
+     */
+    public double getCellSize() {
+        return DGGS.CELL_SIZE_AT_RESOLUTION[_res];
+    }
+
+    /**
+     * @return nominal edge length of a cell at this resolution (UoM: meter)
+     */
+    public double getCellSizeMeter() {
+        return DGGS.CELL_SIZE_METER_AT_RESOLUTION[_res];
     }
 
     /**
@@ -106,9 +115,9 @@ public class ISEA4DFaceCoordinates {
      * @return 2-D distance
      * */
     public double distance2DTo(ISEA4DFaceCoordinates another) {
-        ISEA4DFaceCoordinates from = toOrthogonal();
-        ISEA4DFaceCoordinates to = another.toOrthogonal();
-        return Math.sqrt(Math.pow(from.getX() - to.getX(), 2) + Math.pow(from.getY() - to.getY(), 2));
+        double dx = another._orthogonalX() - this._orthogonalX();
+        double dy = another._orthogonalY() - this._orthogonalY();
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     /**
@@ -121,10 +130,18 @@ public class ISEA4DFaceCoordinates {
         MeterFaceCoordinates from = toMeterUnit();
         MeterFaceCoordinates to = another.toMeterUnit();
 
-        return Math.sqrt(
-                Math.pow(from.getX() - to.getX(), 2)
-                + Math.pow(from.getY() - to.getY(), 2)
-                + Math.pow(from.getZ() - to.getZ(), 2));
+        double dx = from.getX() - to.getX();
+        double dy = from.getY() - to.getY();
+        double dz = from.getZ() - to.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private long _orthogonalX() {
+        return _isOrthogonal ? this._x : (long) SkewTransform.toOrthogonalX(this._x, this._y);
+    }
+
+    private long _orthogonalY() {
+        return _isOrthogonal ? this._y : (long) SkewTransform.toOrthogonalY(this._x, this._y);
     }
 
     /**
@@ -134,12 +151,8 @@ public class ISEA4DFaceCoordinates {
      * */
     public ISEA4DFaceCoordinates toOrthogonal() {
         if(!_isOrthogonal) {
-            double[] b = {this._x, this._y};
-            RealMatrix matrix_B = MatrixUtils.createColumnRealMatrix(b);
-            RealMatrix rmx = MATRIX_A_INVERSE.multiply(matrix_B);
-
-            long orthogonal_x = Double.valueOf(rmx.getData()[0][0]).longValue();
-            long orthogonal_y = Double.valueOf(rmx.getData()[1][0]).longValue();
+            long orthogonal_x = (long) SkewTransform.toOrthogonalX(this._x, this._y);
+            long orthogonal_y = (long) SkewTransform.toOrthogonalY(this._x, this._y);
 
             return new ISEA4DFaceCoordinates(_face, orthogonal_x, orthogonal_y, _z, _res, true);
         }
@@ -154,12 +167,8 @@ public class ISEA4DFaceCoordinates {
      * */
     public ISEA4DFaceCoordinates fromOrthogonalToDGGS() {
         if(_isOrthogonal) {
-            double[] b = {this._x, this._y};
-            RealMatrix matrix_B = MatrixUtils.createColumnRealMatrix(b);
-            RealMatrix rmx = MATRIX_A.multiply(matrix_B);
-
-            long dggs_x = Double.valueOf(rmx.getData()[0][0]).longValue();
-            long dggs_y = Double.valueOf(rmx.getData()[1][0]).longValue();
+            long dggs_x = (long) SkewTransform.toSkewedX(this._x, this._y);
+            long dggs_y = (long) SkewTransform.toSkewedY(this._x, this._y);
 
             return new ISEA4DFaceCoordinates(_face, dggs_x, dggs_y, _z, _res, false);
         }
@@ -1,41 +1,69 @@
 package jp.go.aist.dggs.geometry;
 
 import jp.go.aist.dggs.common.DGGS;
+import jp.go.aist.dggs.utils.SkewTransform;
 
 import static jp.go.aist.dggs.common.DGGS.EIGHT_BIT_MASK;
 import static jp.go.aist.dggs.common.DGGS.Morton2DTable256Encode;
 
 public class LocalFaceCoordinates {
-    private final int _local_resolution = 9;
+    private static final int LOCAL_RESOLUTION = 9;
+    private static final AnchorCache ANCHOR_CACHE = new AnchorCache(10);
     private final int _face;
     private final float _x;
     private final float _y;
     private final float _z;
 
     public LocalFaceCoordinates(ISEA4DFaceCoordinates faceCoordinates) {
-        String localMorton = Morton3D.encode(faceCoordinates).substring(0, _local_resolution + 1);
-        _face = getIntFace(localMorton);
-
-        StringBuilder sb = new StringBuilder(localMorton);
-        for (int i = 0; i < DGGS.MAX_XY_RESOLUTION - _local_resolution; i++) {
-            sb.append('0');
-        }
-        ISEA4DFaceCoordinates fixedFaceCoords = Morton3D.decode(sb.toString()).toOrthogonal();
-        ISEA4DFaceCoordinates orthogonalCoords = faceCoordinates.toOrthogonal();
-
-        _x = (float) (orthogonalCoords.getX() - fixedFaceCoords.getX()) / 10000000f;
-        _y = (float) (orthogonalCoords.getY() - fixedFaceCoords.getY()) / 10000000f;
-        _z = (float) (orthogonalCoords.getZ() - fixedFaceCoords.getZ()) / 10000000f;
+        this(faceCoordinates.getFace(), faceCoordinates.getX(), faceCoordinates.getY(), faceCoordinates.getZ(), faceCoordinates.getResolution());
     }
 
-    private int getIntFace(String localMorton) {
-        ISEA4DFaceCoordinates localFace = Morton3D.decode(localMorton, _local_resolution);
-        int x = (int) localFace.getX();
-        int y = (int) localFace.getY();
-        int z = (int) localFace.getZ();
+    /**
+     * The local face is the cell at LOCAL_RESOLUTION containing the given coordinates. Its anchor (lower corner) is
+     * obtained by masking the bits below LOCAL_RESOLUTION, i.e., without encoding and decoding the PD code.
+     *
+     * @param face       Index of rhombuses (= diamond) from 0 to 9
+     * @param x          X value of ISEA4D face coordinates
+     * @param y          Y value of ISEA4D face coordinates
+     * @param z          Z value of ISEA4D face coordinates
+     * @param resolution Resolution of ISEA4D face coordinates (at least LOCAL_RESOLUTION)
+     */
+    public LocalFaceCoordinates(int face, long x, long y, long z, int resolution) {
+        if (resolution < LOCAL_RESOLUTION || resolution > DGGS.MAX_XY_RESOLUTION)
+            throw new IllegalArgumentException("invalid resolution");
+        final int shift = resolution - LOCAL_RESOLUTION;
+        final long localX = x >>> shift;
+        final long localY = y >>> shift;
+        final long localZ = z >>> shift;
+        final long anchorX = localX << (DGGS.MAX_XY_RESOLUTION - LOCAL_RESOLUTION);
+        final long anchorY = localY << (DGGS.MAX_XY_RESOLUTION - LOCAL_RESOLUTION);
+        final long anchorZ = localZ << (DGGS.MAX_XY_RESOLUTION - LOCAL_RESOLUTION);
+
+        _face = getIntFace(face, localX, localY, localZ);
+        // The local face id is not unique (it keeps 8 bits of X and Y), so the cache is keyed by the face and the full X and Y
+        final long key = (long) face << (2 * LOCAL_RESOLUTION) | localX << LOCAL_RESOLUTION | localY;
+        AnchorCache.Entry anchor = ANCHOR_CACHE.get(key);
+        if (anchor == null)
+            anchor = ANCHOR_CACHE.put(key, (long) SkewTransform.toOrthogonalX(anchorX, anchorY), (long) SkewTransform.toOrthogonalY(anchorX, anchorY));
+        _x = (float) ((long) SkewTransform.toOrthogonalX(x, y) - anchor.x) / 10000000f;
+        _y = (float) ((long) SkewTransform.toOrthogonalY(x, y) - anchor.y) / 10000000f;
+        _z = (float) (z - anchorZ) / 10000000f;
+    }
+
+    /**
+     * @return cache of the anchors of local faces, shared by all instances
+     */
+    public static AnchorCache getAnchorCache() {
+        return ANCHOR_CACHE;
+    }
+
+    private static int getIntFace(int face, long localX, long localY, long localZ) {
+        int x = (int) localX;
+        int y = (int) localY;
+        int z = (int) localZ;
         int _int_face = 0;
         _int_face = _int_face
-                | localFace.getFace() << 19
+                | face << 19
                 | Morton2DTable256Encode[(int) (y & EIGHT_BIT_MASK)] << 4
                 | Morton2DTable256Encode[(int) (x & EIGHT_BIT_MASK)] << 3
                 | (z & 0x00000001) << 2
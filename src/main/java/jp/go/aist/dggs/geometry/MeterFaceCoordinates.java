@@ -1,32 +1,46 @@
 package jp.go.aist.dggs.geometry;
 
-import jp.go.aist.dggs.common.DGGS;
+import jp.go.aist.dggs.utils.PackedPDCode;
+import jp.go.aist.dggs.utils.SkewTransform;
+
+import java.nio.FloatBuffer;
 
 import static jp.go.aist.dggs.common.DGGS.*;
 import static jp.go.aist.dggs.common.DGGS.H_RANGE;
 
 public class MeterFaceCoordinates {
-    private final double _meter_unit = 0.00166282891483159;
-    private final int _local_resolution = 8;
+    private static final int LOCAL_RESOLUTION = 8;
+    private static final int FACE_DIVISOR = 100000000; // 10^LOCAL_RESOLUTION, the face is the first decimal digit
+    private static final AnchorCache ANCHOR_CACHE = new AnchorCache(10);
     private final int _face;
     private final float _x;
     private final float _y;
     private final float _z;
 
     public MeterFaceCoordinates(ISEA4DFaceCoordinates faceCoordinates) {
-        String localMorton = Morton3D.encode(faceCoordinates).substring(0, _local_resolution + 1);
-        _face = getIntFace(localMorton);
-
-        StringBuilder sb = new StringBuilder(localMorton);
-        for (int i = 0; i < DGGS.MAX_XY_RESOLUTION - _local_resolution; i++) {
-            sb.append('0');
-        }
-        ISEA4DFaceCoordinates fixedFaceCoords = Morton3D.decode(sb.toString()).toOrthogonal();
-        ISEA4DFaceCoordinates orthogonalCoords = faceCoordinates.toOrthogonal();
+        this(faceCoordinates.getFace(), faceCoordinates.getX(), faceCoordinates.getY(), faceCoordinates.getZ(), faceCoordinates.getResolution());
+    }
 
-        _x = (float) ((orthogonalCoords.getX() - fixedFaceCoords.getX()) * _meter_unit);
-        _y = (float) ((orthogonalCoords.getY() - fixedFaceCoords.getY()) * _meter_unit);
-        _z = (float) (faceCoordinates.getMaxZ() <= 1 ? 0 : (orthogonalCoords.getZ() * 2.0d * H_RANGE) / faceCoordinates.getMaxZ() - H_RANGE);
+    /**
+     * The local face is the cell at LOCAL_RESOLUTION containing the given coordinates. Its anchor (lower corner) is
+     * obtained by masking the bits below LOCAL_RESOLUTION, i.e., without encoding and decoding the PD code.
+     *
+     * @param face       Index of rhombuses (= diamond) from 0 to 9
+     * @param x          X value of ISEA4D face coordinates
+     * @param y          Y value of ISEA4D face coordinates
+     * @param z          Z value of ISEA4D face coordinates
+     * @param resolution Resolution of ISEA4D face coordinates (at least LOCAL_RESOLUTION)
+     */
+    public MeterFaceCoordinates(int face, long x, long y, long z, int resolution) {
+        if (resolution < LOCAL_RESOLUTION || resolution > MAX_XY_RESOLUTION)
+            throw new IllegalArgumentException("invalid resolution");
+        final int shift = resolution - LOCAL_RESOLUTION;
+
+        _face = getIntFace(face, x >>> shift, y >>> shift);
+        AnchorCache.Entry anchor = getAnchor(_face);
+        _x = (float) (((long) SkewTransform.toOrthogonalX(x, y) - anchor.x) * METER_UNIT);
+        _y = (float) (((long) SkewTransform.toOrthogonalY(x, y) - anchor.y) * METER_UNIT);
+        _z = (float) (MAX_Z_AT_RESOLUTION[resolution] <= 1 ? 0 : (z * 2.0d * H_RANGE) / MAX_Z_AT_RESOLUTION[resolution] - H_RANGE);
     }
 
     public MeterFaceCoordinates(int localFace, float x, float y, float z) {
@@ -37,44 +51,119 @@ public class MeterFaceCoordinates {
     }
 
     public ISEA4DFaceCoordinates toISEA4DFaceCoordinates() {
-        String localMorton = String.valueOf(this.getFace());
-        StringBuilder sb = new StringBuilder(localMorton);
-        for (int i = 0; i < DGGS.MAX_XY_RESOLUTION - _local_resolution; i++) {
-            sb.append('0');
-        }
-        ISEA4DFaceCoordinates fixedFaceCoords = Morton3D.decode(sb.toString()).toOrthogonal();
+        AnchorCache.Entry anchor = getAnchor(this.getFace());
 
-        long orthogonal_x = (long) (this.getX() / _meter_unit + fixedFaceCoords.getX());
-        long orthogonal_y = (long) (this.getY() / _meter_unit + fixedFaceCoords.getY());
-        long orthogonal_z = (long) ((this.getZ() + H_RANGE) * fixedFaceCoords.getMaxZ() / (H_RANGE * 2.0d));
-        int face = Integer.parseInt(localMorton.substring(0,1));
-        ISEA4DFaceCoordinates newOrthogonalFaceCoords = new ISEA4DFaceCoordinates(face, orthogonal_x, orthogonal_y, orthogonal_z, MAX_XY_RESOLUTION, true);
+        long orthogonal_x = (long) (this.getX() / METER_UNIT + anchor.x);
+        long orthogonal_y = (long) (this.getY() / METER_UNIT + anchor.y);
+        long orthogonal_z = (long) ((this.getZ() + H_RANGE) * MAX_Z_AT_RESOLUTION[MAX_XY_RESOLUTION] / (H_RANGE * 2.0d));
+        ISEA4DFaceCoordinates newOrthogonalFaceCoords = new ISEA4DFaceCoordinates(this.getFace() / FACE_DIVISOR, orthogonal_x, orthogonal_y, orthogonal_z, MAX_XY_RESOLUTION, true);
 
         return  newOrthogonalFaceCoords.fromOrthogonalToDGGS();
     }
 
-    private int getIntFace(String localMorton) {
-        int _int_face = 0;
-        if(localMorton.length() <= 9) {
-            _int_face = Integer.parseInt(localMorton);
+    /**
+     * Packed PD codes conversion to meter unit coordinates, into caller-owned arrays.
+     * Each code is taken at its lower corner at MAX_XY_RESOLUTION, like {@code toFaceCoordinate(faceCoordinates, MAX_XY_RESOLUTION)}.
+     *
+     * @param packedCodes   packed PD codes (3-D, resolution at least LOCAL_RESOLUTION)
+     * @param localFaces    Output array of local faces
+     * @param xyz           Output array of interleaved X, Y and Z (UoM: meter), 3 values per code
+     */
+    public static void toMeterUnits(long[] packedCodes, int[] localFaces, float[] xyz) {
+        long[] faceCoordinates = new long[4];
+        float[] meters = new float[3];
+        for (int i = 0; i < packedCodes.length; i++) {
+            localFaces[i] = toMeterUnit(packedCodes[i], faceCoordinates, meters);
+            xyz[3 * i] = meters[0];
+            xyz[3 * i + 1] = meters[1];
+            xyz[3 * i + 2] = meters[2];
         }
-        else {
-            // TODO: Currently, not necessary
-            System.out.println("face index value is over than Integer.MAX_VALUE");
-
-            ISEA4DFaceCoordinates localFace = Morton3D.decode(localMorton, _local_resolution);
-            int x = (int) localFace.getX();
-            int y = (int) localFace.getY();
-            int z = (int) localFace.getZ();
-            _int_face = _int_face
-                    | localFace.getFace() << 19
-                    | Morton2DTable256Encode[(int) (y & EIGHT_BIT_MASK)] << 4
-                    | Morton2DTable256Encode[(int) (x & EIGHT_BIT_MASK)] << 3
-                    | (z & 0x00000001) << 2
-                    | (y & 0x00000001) << 1
-                    | (x & 0x00000001);
+    }
+
+    /**
+     * Packed PD codes conversion to meter unit coordinates, into caller-owned buffers.
+     * Each code is taken at its lower corner at MAX_XY_RESOLUTION, like {@code toFaceCoordinate(faceCoordinates, MAX_XY_RESOLUTION)}.
+     * The values are written from the position of the buffer, and the position is not changed.
+     *
+     * @param packedCodes   packed PD codes (3-D, resolution at least LOCAL_RESOLUTION)
+     * @param localFaces    Output array of local faces
+     * @param xyz           Output buffer of interleaved X, Y and Z (UoM: meter), 3 values per code
+     */
+    public static void toMeterUnits(long[] packedCodes, int[] localFaces, FloatBuffer xyz) {
+        final int position = xyz.position();
+        long[] faceCoordinates = new long[4];
+        float[] meters = new float[3];
+        for (int i = 0; i < packedCodes.length; i++) {
+            localFaces[i] = toMeterUnit(packedCodes[i], faceCoordinates, meters);
+            xyz.put(position + 3 * i, meters[0]);
+            xyz.put(position + 3 * i + 1, meters[1]);
+            xyz.put(position + 3 * i + 2, meters[2]);
         }
+    }
 
+    /**
+     * The same arithmetic as the constructor at MAX_XY_RESOLUTION, without an instance. The anchor is the masked X/Y,
+     * so the anchor cache is not used.
+     *
+     * @param faceCoordinates   Work buffer of the decoded face coordinates
+     * @param meters            Output buffer: X, Y and Z (UoM: meter)
+     * @return local face
+     */
+    private static int toMeterUnit(long packedCode, long[] faceCoordinates, float[] meters) {
+        final int resolution = PackedPDCode.getResolution(packedCode);
+        if (resolution < LOCAL_RESOLUTION)
+            throw new IllegalArgumentException("invalid resolution");
+        Morton3D.decodeLong(packedCode, faceCoordinates);
+        final int shift = MAX_XY_RESOLUTION - resolution;
+        final long x = faceCoordinates[1] << shift;
+        final long y = faceCoordinates[2] << shift;
+        final long z = faceCoordinates[3] << shift;
+        final int localShift = MAX_XY_RESOLUTION - LOCAL_RESOLUTION;
+        final long anchorX = (x >>> localShift) << localShift;
+        final long anchorY = (y >>> localShift) << localShift;
+
+        meters[0] = (float) (((long) SkewTransform.toOrthogonalX(x, y) - (long) SkewTransform.toOrthogonalX(anchorX, anchorY)) * METER_UNIT);
+        meters[1] = (float) (((long) SkewTransform.toOrthogonalY(x, y) - (long) SkewTransform.toOrthogonalY(anchorX, anchorY)) * METER_UNIT);
+        meters[2] = (float) (MAX_Z_AT_RESOLUTION[MAX_XY_RESOLUTION] <= 1 ? 0 : (z * 2.0d * H_RANGE) / MAX_Z_AT_RESOLUTION[MAX_XY_RESOLUTION] - H_RANGE);
+        return getIntFace((int) faceCoordinates[0], x >>> localShift, y >>> localShift);
+    }
+
+    /**
+     * @return cache of the anchors of local faces, shared by all instances
+     */
+    public static AnchorCache getAnchorCache() {
+        return ANCHOR_CACHE;
+    }
+
+    /**
+     * Orthogonal anchor (lower corner at MAX_XY_RESOLUTION) of a local face, from the cache or from the digits of the local face.
+     */
+    private static AnchorCache.Entry getAnchor(int localFace) {
+        AnchorCache.Entry anchor = ANCHOR_CACHE.get(localFace);
+        if (anchor != null) return anchor;
+
+        // # Split the local face into the X/Y bits of the anchor (one decimal digit per level)
+        int digits = localFace;
+        long anchorX = 0;
+        long anchorY = 0;
+        for (int i = MAX_XY_RESOLUTION - LOCAL_RESOLUTION; i < MAX_XY_RESOLUTION; i++) {
+            int digit = digits % 10;
+            digits /= 10;
+            anchorX |= (long) (digit & 1) << i;
+            anchorY |= (long) ((digit >>> 1) & 1) << i;
+        }
+        return ANCHOR_CACHE.put(localFace, (long) SkewTransform.toOrthogonalX(anchorX, anchorY), (long) SkewTransform.toOrthogonalY(anchorX, anchorY));
+    }
+
+    /**
+     * The local face in decimal digits: the face, followed by one PD code digit (without Z) per level
+     * until LOCAL_RESOLUTION.
+     */
+    private static int getIntFace(int face, long localX, long localY) {
+        int _int_face = face;
+        for (int i = LOCAL_RESOLUTION - 1; i >= 0; i--) {
+            _int_face = _int_face * 10 + (int) (((localY >>> i) & 1) << 1 | ((localX >>> i) & 1));
+        }
         return _int_face;
     }
 
@@ -105,11 +194,16 @@ public class MeterFaceCoordinates {
      * @return 2-D distance
      * */
     public double distance2DTo(MeterFaceCoordinates another) {
-        return Math.sqrt(Math.pow(this.getX() - another.getX(), 2) + Math.pow(this.getY() - another.getY(), 2));
+        double dx = this.getX() - another.getX();
+        double dy = this.getY() - another.getY();
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     public double distance3DTo(MeterFaceCoordinates another) {
-        return Math.sqrt(Math.pow(this.getX() - another.getX(), 2) + Math.pow(this.getY() - another.getY(), 2) + Math.pow(this.getZ() - another.getZ(), 2));
+        double dx = this.getX() - another.getX();
+        double dy = this.getY() - another.getY();
+        double dz = this.getZ() - another.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
 
     @Override
@@ -1,7 +1,9 @@
 package jp.go.aist.dggs.geometry;
 
 import jp.go.aist.dggs.query.ISEA4DCellBoundary;
+import jp.go.aist.dggs.utils.BitInterleave;
 import jp.go.aist.dggs.utils.MortonUtils;
+import jp.go.aist.dggs.utils.PackedPDCode;
 import org.giscience.utils.geogrid.geometry.GeoCoordinates;
 
 import static jp.go.aist.dggs.common.DGGS.*;
@@ -60,6 +62,36 @@ public class Morton2D {
         return pdCode.toString();
     }
 
+    /**
+     * PD code (Point cloud DGGS code, DGGS Morton for point cloud) encoding with the bit-interleaving kernel
+     * (see {@link BitInterleave#interleave2D}), instead of the lookup tables of {@link #encode(ISEA4DFaceCoordinates, int)}.
+     * The PD code is the same, but the face coordinates must be in range.
+     *
+     * @param faceCoordinates   ISEA4D face coordinate
+     * @param resolution        Target resolution of PD code
+     * @return PD code: Point cloud DGGS code, DGGS Morton for point cloud
+     * @throws IllegalArgumentException if the face, X, Y or the resolution is out of range
+     */
+    public static String encodeInterleaved(ISEA4DFaceCoordinates faceCoordinates, int resolution) {
+        final int face = faceCoordinates.getFace();
+        final long x = faceCoordinates.getX();
+        final long y = faceCoordinates.getY();
+        if (face < 0 || face > 9 || resolution < 0)
+            throw new IllegalArgumentException("face or resolution is out of range for PD code: face = " + face + " || resolution = " + resolution);
+        if (x >>> MAX_XY_RESOLUTION != 0 || y >>> MAX_XY_RESOLUTION != 0)
+            throw new IllegalArgumentException("X or Y is out of range for PD code: X = " + x + " || Y = " + y);
+
+        final long mCode = BitInterleave.interleave2D(x, y);
+        final int length = Math.min(resolution, MAX_XY_RESOLUTION);
+        char[] pdCode = new char[length + 1];
+        pdCode[0] = (char) ('0' + face);
+        for (int level = 0; level < length; ++level) {
+            pdCode[level + 1] = (char) ('0' + ((mCode >>> ((MAX_XY_RESOLUTION - 1 - level) * DIMENSION)) & 3));
+        }
+
+        return new String(pdCode);
+    }
+
     /**
      * Convert PD code to face coordinate.
      *
@@ -78,46 +110,275 @@ public class Morton2D {
      * @return 3-dimensional coordinate on ISEA projection face
      */
     public static ISEA4DFaceCoordinates decode(String pdCode, int resolution) {
-        int face = Integer.parseInt(pdCode.substring(0, 1));
-        String morton = pdCode.substring(1);
+        return decode((CharSequence) pdCode, resolution);
+    }
 
+    /**
+     * Convert PD code to face coordinate.
+     * Each digit is read by character arithmetic, without intermediate Strings.
+     * If the PD code is shorter than the target resolution, missing digits are regarded as '0'.
+     *
+     * @param pdCode        Point cloud DGGS code, DGGS Morton for point cloud
+     * @param resolution    Target resolution of PD code
+     * @return 2-dimensional coordinate on ISEA projection face
+     */
+    public static ISEA4DFaceCoordinates decode(CharSequence pdCode, int resolution) {
+        long[] faceCoordinates = new long[3];
+        decode(pdCode, resolution, faceCoordinates);
 
-        int extraSize = resolution - morton.length();
-        StringBuilder sb = new StringBuilder(morton);
-        if(extraSize > 0) {
-            for (int i = 0; i < extraSize; i++) {
-                sb.append('0');
-            }
-            morton = sb.toString();
+        return new ISEA4DFaceCoordinates((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], resolution);
+    }
+
+    /**
+     * Convert PD code to face coordinate, into a caller-owned buffer.
+     * If the PD code is shorter than the target resolution, missing digits are regarded as '0'.
+     *
+     * @param pdCode            Point cloud DGGS code, DGGS Morton for point cloud
+     * @param resolution        Target resolution of PD code
+     * @param faceCoordinates   Output buffer: face, x and y of ISEA4D face coordinates
+     */
+    public static void decode(CharSequence pdCode, int resolution, long[] faceCoordinates) {
+        final int face = pdCode.length() == 0 ? -1 : pdCode.charAt(0) - '0';
+        if (face < 0 || face > 9)
+            throw new IllegalArgumentException("invalid face of PD code: " + pdCode);
+        final int length = Math.min(pdCode.length() - 1, resolution);
+        final int extraSize = resolution - length;
+        long x = 0, y = 0;
+
+        for (int i = 1; i <= length; ++i) {
+            int digit = pdCode.charAt(i) - '0';
+            if (digit < 0 || digit > 3)
+                throw new IllegalArgumentException("invalid digit of PD code: " + pdCode);
+            x = x << 1 | (digit & 1);
+            y = y << 1 | (digit >> 1);
         }
-        else {
-            morton = sb.substring(0, resolution);
+
+        faceCoordinates[0] = face;
+        faceCoordinates[1] = x << extraSize;
+        faceCoordinates[2] = y << extraSize;
+    }
+
+    /**
+     * Convert PD code, given as ASCII bytes, to face coordinate.
+     * If the PD code is shorter than the target resolution, missing digits are regarded as '0'.
+     *
+     * @param pdCode        Point cloud DGGS code, DGGS Morton for point cloud (ASCII)
+     * @param offset        Offset of the face digit in the array
+     * @param length        Length of PD code (face digit included)
+     * @param resolution    Target resolution of PD code
+     * @return 2-dimensional coordinate on ISEA projection face
+     */
+    public static ISEA4DFaceCoordinates decode(byte[] pdCode, int offset, int length, int resolution) {
+        final int face = length < 1 ? -1 : pdCode[offset] - '0';
+        if (face < 0 || face > 9)
+            throw new IllegalArgumentException("invalid face of PD code at index " + offset);
+        final int end = offset + Math.min(length - 1, resolution);
+        final int extraSize = resolution - (end - offset);
+        long x = 0, y = 0;
+
+        for (int i = offset + 1; i <= end; ++i) {
+            int digit = pdCode[i] - '0';
+            if (digit < 0 || digit > 3)
+                throw new IllegalArgumentException("invalid digit of PD code at index " + i);
+            x = x << 1 | (digit & 1);
+            y = y << 1 | (digit >> 1);
         }
 
-        long[] coordinates = new long[2];
-        final int LOOP_COUNT = morton.length() / UNIT_SIZE_2D;
-        for (int i = 0; i < LOOP_COUNT; ++i) {
-            int index = PDCode2DTable256Decode.get(morton.substring(
-                    (LOOP_COUNT - (i + 1)) * UNIT_SIZE_2D,
-                    (LOOP_COUNT - i) * UNIT_SIZE_2D));
-            coordinates[0] |= Morton2DTable256Decode[index] << (UNIT_SIZE_2D * i);
-            coordinates[1] |= Morton2DTable256Decode[index >> 1] << (UNIT_SIZE_2D * i);
+        return new ISEA4DFaceCoordinates(face, x << extraSize, y << extraSize, resolution);
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding.
+     *
+     * @param faceCoordinates   ISEA4D face coordinate
+     * @return packed PD code
+     */
+    public static long encodeLong(ISEA4DFaceCoordinates faceCoordinates) {
+        return encodeLong(faceCoordinates, faceCoordinates.getResolution());
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding.
+     * The result is the packed form of {@link #encode(ISEA4DFaceCoordinates, int)}.
+     *
+     * @param faceCoordinates   ISEA4D face coordinate
+     * @param resolution        Target resolution of PD code (up to MAX_PACKED_2D_RESOLUTION)
+     * @return packed PD code
+     */
+    public static long encodeLong(ISEA4DFaceCoordinates faceCoordinates, int resolution) {
+        return encodeLong(faceCoordinates.getFace(), faceCoordinates.getX(), faceCoordinates.getY(), resolution);
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding.
+     * X and Y are 32-bits values, as same as the encoding of String PD code.
+     *
+     * @param face          Index of rhombuses (= diamond) from 0 to 9
+     * @param x             range is from 0 to 4,294,967,295 (2^32 - 1)
+     * @param y             range is from 0 to 4,294,967,295 (2^32 - 1)
+     * @param resolution    Target resolution of PD code (up to MAX_PACKED_2D_RESOLUTION)
+     * @return packed PD code
+     */
+    public static long encodeLong(int face, long x, long y, int resolution) {
+        if (face < 0 || face > 9 || resolution < 0 || resolution > MAX_PACKED_2D_RESOLUTION)
+            throw new IllegalArgumentException("face or resolution is out of range for packed PD code: face = " + face + " || resolution = " + resolution);
+
+        final int bitCount = PackedPDCode.bitCount2D(resolution);
+        // Keep the upper bitCount bits; shifting twice avoids a 64-bits shift when bitCount is 0
+        long mCode = (BitInterleave.interleave2D(x, y) >>> 1) >>> (Long.SIZE - 1 - bitCount);
+
+        return PackedPDCode.pack(face, mCode, bitCount, resolution);
+    }
+
+    /**
+     * Convert packed PD code to face coordinate.
+     * The result has the resolution of the packed PD code, as same as {@link #decode(String, int)}.
+     *
+     * @param packedCode    packed PD code
+     * @return 2-dimensional coordinate on ISEA projection face
+     */
+    public static ISEA4DFaceCoordinates decodeLong(long packedCode) {
+        long[] faceCoordinates = new long[3];
+        decodeLong(packedCode, faceCoordinates);
+
+        return new ISEA4DFaceCoordinates((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2],
+                PackedPDCode.getResolution(packedCode));
+    }
+
+    /**
+     * Convert packed PD code to face coordinate, into a caller-owned buffer.
+     * The result has the resolution of the packed PD code.
+     *
+     * @param packedCode        packed PD code
+     * @param faceCoordinates   Output buffer: face, x and y of ISEA4D face coordinates
+     */
+    public static void decodeLong(long packedCode, long[] faceCoordinates) {
+        final int resolution = PackedPDCode.getResolution(packedCode);
+        final int bitCount = PackedPDCode.bitCount2D(resolution);
+        // Align to the resolution MAX_XY_RESOLUTION (64-bits), then gather the X and Y bits
+        long mCode = PackedPDCode.getMortonBits(packedCode, bitCount) << (Long.SIZE - bitCount);
+        faceCoordinates[0] = PackedPDCode.getFace(packedCode);
+        faceCoordinates[1] = BitInterleave.compact2D(mCode) >>> (MAX_XY_RESOLUTION - resolution);
+        faceCoordinates[2] = BitInterleave.compact2D(mCode >>> 1) >>> (MAX_XY_RESOLUTION - resolution);
+    }
+
+    /**
+     * Convert packed PD codes to face coordinates, into caller-owned parallel arrays.
+     * Each result has the resolution of its packed PD code.
+     *
+     * @param packedCodes   packed PD codes
+     * @param faces         Output array of face indexes
+     * @param x             Output array of X values
+     * @param y             Output array of Y values
+     */
+    public static void decodeLong(long[] packedCodes, int[] faces, long[] x, long[] y) {
+        long[] faceCoordinates = new long[3];
+        for (int i = 0; i < packedCodes.length; i++) {
+            decodeLong(packedCodes[i], faceCoordinates);
+            faces[i] = (int) faceCoordinates[0];
+            x[i] = faceCoordinates[1];
+            y[i] = faceCoordinates[2];
         }
+    }
 
-        if (morton.length() % UNIT_SIZE_2D != 0) {
-            int remainStringSize = morton.length() % UNIT_SIZE_2D;
-            String remainString = morton.substring(morton.length() - remainStringSize);
-            sb = new StringBuilder(remainString);
-            for (int i = 0; i < UNIT_SIZE_2D - remainStringSize; i++) {
-                sb.insert(0, '0');
-            }
-            String remainPDCode = sb.toString();
-            int index = PDCode2DTable256Decode.get(remainPDCode);
-            coordinates[0] = coordinates[0] << remainStringSize | Morton2DTable256Decode[index];
-            coordinates[1] = coordinates[1] << remainStringSize | Morton2DTable256Decode[index >> 1];
+    /**
+     * Convert packed PD code to String PD code.
+     *
+     * @param packedCode    packed PD code
+     * @return PD code: Point cloud DGGS code, DGGS Morton for point cloud
+     */
+    public static String toPDCode(long packedCode) {
+        final int resolution = PackedPDCode.getResolution(packedCode);
+        final int bitCount = PackedPDCode.bitCount2D(resolution);
+        long mCode = PackedPDCode.getMortonBits(packedCode, bitCount);
+        char[] pdCode = new char[resolution + 1];
+        pdCode[0] = (char) ('0' + PackedPDCode.getFace(packedCode));
+
+        for (int level = 0; level < resolution; ++level) {
+            pdCode[level + 1] = (char) ('0' + ((mCode >>> (bitCount - (level + 1) * DIMENSION)) & 0x3));
         }
 
-        return new ISEA4DFaceCoordinates(face, coordinates[0], coordinates[1], resolution);
+        return new String(pdCode);
+    }
+
+    /**
+     * Convert String PD code to packed PD code.
+     *
+     * @param pdCode    Point cloud DGGS code, DGGS Morton for point cloud
+     * @return packed PD code
+     */
+    public static long fromPDCode(String pdCode) {
+        final int resolution = pdCode.length() - 1;
+        final int face = pdCode.isEmpty() ? -1 : pdCode.charAt(0) - '0';
+        if (face < 0 || face > 9 || resolution > MAX_PACKED_2D_RESOLUTION)
+            throw new IllegalArgumentException("face or resolution is out of range for packed PD code: " + pdCode);
+
+        long mCode = 0;
+        for (int level = 0; level < resolution; ++level) {
+            int digit = pdCode.charAt(level + 1) - '0';
+            if (digit < 0 || digit > 3)
+                throw new IllegalArgumentException("invalid digit for packed PD code: " + pdCode);
+            mCode = mCode << DIMENSION | digit;
+        }
+
+        return PackedPDCode.pack(face, mCode, PackedPDCode.bitCount2D(resolution), resolution);
+    }
+
+    /**
+     * Packed PD code of the ancestor cell at a given resolution.
+     *
+     * @param packedCode    packed PD code (2-D)
+     * @param resolution    Resolution of the ancestor (from 0 to the resolution of the packed PD code)
+     * @return packed PD code of the ancestor
+     * @throws IllegalArgumentException if the resolution is out of range
+     */
+    public static long parent(long packedCode, int resolution) {
+        if (resolution < 0 || resolution > PackedPDCode.getResolution(packedCode))
+            throw new IllegalArgumentException("resolution is out of range for the parent: " + resolution);
+        return PackedPDCode.truncate(packedCode, PackedPDCode.bitCount2D(resolution), resolution);
+    }
+
+    /**
+     * Packed PD codes of the child cells (one resolution higher), in ascending order.
+     *
+     * @param packedCode    packed PD code (2-D)
+     * @return 4 packed PD codes
+     * @throws IllegalArgumentException if the resolution of the packed PD code is already MAX_PACKED_2D_RESOLUTION
+     */
+    public static long[] children(long packedCode) {
+        final int resolution = PackedPDCode.getResolution(packedCode);
+        if (resolution >= MAX_PACKED_2D_RESOLUTION)
+            throw new IllegalArgumentException("resolution is out of range for the children: " + resolution);
+        final int bitCount = PackedPDCode.bitCount2D(resolution + 1);
+        final long base = (packedCode & ~PACKED_RESOLUTION_MASK) | (resolution + 1);
+        long[] children = new long[1 << (bitCount - PackedPDCode.bitCount2D(resolution))];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = base | ((long) i << (PACKED_FACE_SHIFT - bitCount));
+        }
+
+        return children;
+    }
+
+    /**
+     * @param ancestor      packed PD code (2-D)
+     * @param packedCode    packed PD code (2-D)
+     * @return true if the packed PD code is the ancestor itself or one of its descendants
+     */
+    public static boolean isAncestor(long ancestor, long packedCode) {
+        return ancestor <= packedCode
+                && packedCode <= PackedPDCode.lastDescendant(ancestor, PackedPDCode.bitCount2D(PackedPDCode.getResolution(ancestor)));
+    }
+
+    /**
+     * Range of the packed PD codes of a cell and all its descendants (at any resolution).
+     * In a store sorted by packed PD code, the whole subtree of the cell is this contiguous range.
+     *
+     * @param packedCode    packed PD code (2-D)
+     * @return lowest and highest packed PD code (both inclusive)
+     */
+    public static long[] descendantRange(long packedCode) {
+        return new long[] {packedCode,
+                PackedPDCode.lastDescendant(packedCode, PackedPDCode.bitCount2D(PackedPDCode.getResolution(packedCode)))};
     }
 
     /**
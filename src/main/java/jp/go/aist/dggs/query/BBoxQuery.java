@@ -6,13 +6,29 @@ import jp.go.aist.dggs.geometry.ISEA4DFaceCoordinates;
 import jp.go.aist.dggs.geometry.Morton3D;
 import jp.go.aist.dggs.utils.MortonUtils;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class BBoxQuery {
+    private static final int QUERY_BLOCK_SIZE = 16;
 
     /**
      * Returns an iterator of the PD codes list, which contained a given bounding box.
+     * The iterator is lazy: the query ranges are queried one after another while the iterator is consumed,
+     * so that the first PD codes are available before the whole query is done.
+     * The tree must not be modified while the iterator is used.
      *
      * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
      * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
@@ -21,13 +37,36 @@ public class BBoxQuery {
      * @return An iterator of the PD codes list, which contained a given bounding box
      * */
     public static Iterator<String> doBBoxQuery(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, PhTree<String> phTree) {
-        HashSet<String> result = getBBoxQueryResult(minCoords, maxCoords, resolution, phTree);
+        if(minCoords.getDimension() != maxCoords.getDimension() || phTree.getDim() != minCoords.getDimension()) {
+            throw new IllegalArgumentException();
+        }
+
+        return new ResultIterator(phTree, translateQueryRange(minCoords, maxCoords, resolution));
+    }
 
-        return result.iterator();
+    /**
+     * Returns a lazy stream of the PD codes list, which contained a given bounding box (see {@link #doBBoxQuery}).
+     * E.g., {@code limit(n)} stops querying the tree after n PD codes.
+     *
+     * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
+     * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of generate Morton code
+     * @param phTree Index tree of point cloud dataset
+     * @return A stream of the PD codes list, which contained a given bounding box
+     * */
+    public static Stream<String> streamBBoxQuery(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, PhTree<String> phTree) {
+        return stream(doBBoxQuery(minCoords, maxCoords, resolution, phTree));
+    }
+
+    /**
+     * @return A sequential stream, which pulls the PD codes from the iterator one by one
+     */
+    static Stream<String> stream(Iterator<String> pdCodes) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pdCodes, Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
     public static HashSet<String> getBBoxQueryResult(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, PhTree<String> phTree) {
-        if(minCoords.getDimension() != maxCoords.getDimension() && phTree.getDim() != minCoords.getDimension()) {
+        if(minCoords.getDimension() != maxCoords.getDimension() || phTree.getDim() != minCoords.getDimension()) {
             throw new IllegalArgumentException();
         }
 
@@ -35,119 +74,250 @@ public class BBoxQuery {
         ArrayList<QueryRange> queryList = translateQueryRange(minCoords, maxCoords, resolution);
 
         // Collect each query result from queryList
-        for(QueryRange qr : queryList) {
-            PhTree.PhQuery<String> tempResult = phTree.query(qr.minPoint, qr.maxPoint);
-            while (tempResult.hasNext()) {
-                String pdCode = tempResult.nextValue();
-                result.add(pdCode);
+        query(phTree, queryList, 0, queryList.size(), result);
+        return result;
+    }
+
+    /**
+     * Returns the PD codes list, which contained a given bounding box, using the common ForkJoinPool.
+     * The tree must not be modified during the query.
+     *
+     * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
+     * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of generate Morton code
+     * @param phTree Index tree of point cloud dataset
+     * @return The PD codes list, which contained a given bounding box
+     * */
+    public static HashSet<String> getBBoxQueryResultParallel(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, PhTree<String> phTree) {
+        return getBBoxQueryResult(minCoords, maxCoords, resolution, phTree, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns the PD codes list, which contained a given bounding box, using a given executor.
+     * The query ranges are split into blocks of QUERY_BLOCK_SIZE columns, and each block is queried by one task
+     * into its own buffer. The buffers are merged at the end. The tree must not be modified during the query.
+     *
+     * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
+     * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of generate Morton code
+     * @param phTree Index tree of point cloud dataset
+     * @param executor Executor of the query tasks (e.g. a ForkJoinPool)
+     * @return The PD codes list, which contained a given bounding box
+     * */
+    public static HashSet<String> getBBoxQueryResult(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, PhTree<String> phTree, ExecutorService executor) {
+        if(minCoords.getDimension() != maxCoords.getDimension() || phTree.getDim() != minCoords.getDimension()) {
+            throw new IllegalArgumentException();
+        }
+
+        ArrayList<QueryRange> queryList = translateQueryRange(minCoords, maxCoords, resolution);
+        ArrayList<Future<ArrayList<String>>> futures = new ArrayList<>();
+        for(int from = 0; from < queryList.size(); from += QUERY_BLOCK_SIZE) {
+            final int blockFrom = from;
+            final int blockTo = Math.min(from + QUERY_BLOCK_SIZE, queryList.size());
+            futures.add(executor.submit(() -> {
+                ArrayList<String> buffer = new ArrayList<>();
+                query(phTree, queryList, blockFrom, blockTo, buffer);
+                return buffer;
+            }));
+        }
+
+        HashSet<String> result = new HashSet<>();
+        try {
+            for(Future<ArrayList<String>> future : futures) {
+                result.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for(Future<ArrayList<String>> future : futures) {
+                future.cancel(true);
             }
         }
         return result;
     }
 
-    public static ArrayList<QueryRange> translateQueryRange(GeoCoordinates coordLL, GeoCoordinates coordRU, int resolution) {
-        ArrayList<QueryRange> queryList         = new ArrayList<>();
-        ArrayList<Long> bottomBoundaryValueList = new ArrayList<>();
-        ArrayList<Long> topBoundaryValueList    = new ArrayList<>();
-
-        GeoCoordinates coordLU = new GeoCoordinates(coordRU.getLat(), coordLL.getLon(), coordRU.getHeight());
-        GeoCoordinates coordRL = new GeoCoordinates(coordLL.getLat(), coordRU.getLon(), coordLL.getHeight());
-
-        QueryPoint queryLL = new QueryPoint(coordLL, resolution);
-        QueryPoint queryRU = new QueryPoint(coordRU, resolution);
-        QueryPoint queryLU = new QueryPoint(coordLU, resolution);
-        QueryPoint queryRL = new QueryPoint(coordRL, resolution);
-
-        long bottomBoundaryValue = queryLU._faceCoordinates.getY();
-        long topBoundaryValue    = queryLU._faceCoordinates.getY();
-
-        for(long xCoords = queryLU._faceCoordinates.getX(); xCoords <= queryLL._faceCoordinates.getX(); xCoords++) {
-            // cell boundary check (Two exceptional cases)
-            ISEA4DFaceCoordinates faceCoordinates   = new ISEA4DFaceCoordinates(queryLU._face, xCoords, bottomBoundaryValue, 0, resolution);
-            GeoCoordinates centerP                  = Morton3D.getCenter(faceCoordinates);
-            GeoCoordinates[] boundary               = Morton3D.getBoundary(faceCoordinates).toList();
-
-            if(centerP.getLon() > coordLL.getLon() && bottomBoundaryValue > queryLL._faceCoordinates.getY()) {
-                bottomBoundaryValue--;
-            } else if(boundary[2].getLon() < coordLL.getLon()) {
-                bottomBoundaryValue++;
-            }
-            bottomBoundaryValueList.add(bottomBoundaryValue);
-            bottomBoundaryValue--;
-
-            if(bottomBoundaryValue < queryLL._faceCoordinates.getY()) // LL point's Y value is minimum Y value of given range
-                bottomBoundaryValue = queryLL._faceCoordinates.getY();
-        }
-        for(long xCoords = queryLL._faceCoordinates.getX() + 1; xCoords <= queryRL._faceCoordinates.getX(); xCoords++) {
-            // cell boundary check (Two exceptional cases)
-            ISEA4DFaceCoordinates faceCoordinates   = new ISEA4DFaceCoordinates(queryLL._face, xCoords, bottomBoundaryValue, 0, resolution);
-            GeoCoordinates centerP                  = Morton3D.getCenter(faceCoordinates);
-            GeoCoordinates[] boundary               = Morton3D.getBoundary(faceCoordinates).toList();
-
-            if(centerP.getLat() > coordLL.getLat()) {
-                bottomBoundaryValue--;
-            } else if(boundary[3].getLat() < coordLL.getLat()) {
-                bottomBoundaryValue++;
+    private static void query(PhTree<String> phTree, List<QueryRange> queryList, int from, int to, Collection<String> result) {
+        if(from >= to) return;
+        // One query object is reset for each range
+        PhTree.PhQuery<String> query = phTree.query(queryList.get(from).minPoint, queryList.get(from).maxPoint);
+        for(int i = from; i < to; i++) {
+            if(i > from) query.reset(queryList.get(i).minPoint, queryList.get(i).maxPoint);
+            while (query.hasNext()) {
+                String pdCode = query.nextValue();
+                if(isOnFace(pdCode, queryList.get(i).face))
+                    result.add(pdCode);
             }
-            bottomBoundaryValueList.add(bottomBoundaryValue);
-            bottomBoundaryValue++;
+        }
+    }
+
+    /**
+     * The keys of the tree (X, Y and Z) do not contain the face, so the PD codes of a range are filtered by its face.
+     */
+    private static boolean isOnFace(String pdCode, int face) {
+        return pdCode.charAt(0) - '0' == face;
+    }
+
+    /**
+     * Returns the packed PD codes of a sorted code array, which contained a given bounding box.
+     * The bounding box is decomposed into intervals of packed PD codes (see {@link MortonIntervals}),
+     * and each interval is one range scan of the array.
+     *
+     * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
+     * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of the packed PD codes
+     * @param sortedPackedCodes Packed PD codes of point cloud dataset in ascending order (3-D if the box is 3-D)
+     * @return packed PD codes in the bounding box, in ascending order
+     * */
+    public static long[] getBBoxQueryResult(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, long[] sortedPackedCodes) {
+        LongStream.Builder result = LongStream.builder();
+        // Faces are the highest bits of packed PD codes: the faces in ascending order give the codes in ascending order
+        for(MortonIntervals intervals : toFaceMortonIntervals(minCoords, maxCoords, resolution, MortonIntervals.DEFAULT_MAX_INTERVALS)) {
+            intervals.scan(sortedPackedCodes, result);
         }
 
-        for(long xCoords = queryLU._faceCoordinates.getX(); xCoords <= queryRU._faceCoordinates.getX(); xCoords++) {
-            // cell boundary check (Two exceptional cases)
-            ISEA4DFaceCoordinates faceCoordinates   = new ISEA4DFaceCoordinates(queryLU._face, xCoords, topBoundaryValue, 0, resolution);
-            GeoCoordinates centerP                  = Morton3D.getCenter(faceCoordinates);
-            GeoCoordinates[] boundary               = Morton3D.getBoundary(faceCoordinates).toList();
+        return result.build().toArray();
+    }
 
-            if(centerP.getLat() < coordRU.getLat() && topBoundaryValue < queryRU._faceCoordinates.getY()) {
-                topBoundaryValue++;
-            } else if(boundary[1].getLat() > coordRU.getLat()) {
-                topBoundaryValue--;
-            }
-            topBoundaryValueList.add(topBoundaryValue);
-            topBoundaryValue++;
-
-            if(topBoundaryValue > queryRU._faceCoordinates.getY()) // RU point's Y value is maximum Y value of given range
-                topBoundaryValue = queryRU._faceCoordinates.getY();
-        }
-        for(long xCoords = queryRU._faceCoordinates.getX() + 1; xCoords <= queryRL._faceCoordinates.getX(); xCoords++) {
-            // cell boundary check (Two exceptional cases)
-            ISEA4DFaceCoordinates faceCoordinates   = new ISEA4DFaceCoordinates(queryRU._face, xCoords, topBoundaryValue, 0, resolution);
-            GeoCoordinates centerP                  = Morton3D.getCenter(faceCoordinates);
-            GeoCoordinates[] boundary               = Morton3D.getBoundary(faceCoordinates).toList();
-
-            if(centerP.getLon() < coordRU.getLon()) {
-                topBoundaryValue++;
-            } else if(boundary[0].getLon() > coordRU.getLon()) {
-                topBoundaryValue--;
-            }
-            topBoundaryValueList.add(topBoundaryValue);
-            topBoundaryValue--;
+    /**
+     * Decomposes a given bounding box into intervals of packed PD codes.
+     *
+     * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
+     * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of the packed PD codes
+     * @param maxIntervals Maximum number of intervals (more intervals give less codes outside the box)
+     * @return intervals of packed PD codes
+     * @throws IllegalArgumentException if the bounding box is on more than one face (see {@link #toFaceMortonIntervals})
+     * */
+    public static MortonIntervals toMortonIntervals(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, int maxIntervals) {
+        List<MortonIntervals> intervals = toFaceMortonIntervals(minCoords, maxCoords, resolution, maxIntervals);
+        if(intervals.size() != 1) {
+            throw new IllegalArgumentException("bounding box is on " + intervals.size() + " faces");
         }
 
-        if(topBoundaryValueList.size() != bottomBoundaryValueList.size()) {
-            throw new IllegalStateException();
+        return intervals.get(0);
+    }
+
+    /**
+     * Decomposes a given bounding box into intervals of packed PD codes, one decomposition per face.
+     *
+     * @param minCoords Minimum geodetic coordinates of bounding cube (or box)
+     * @param maxCoords Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of the packed PD codes
+     * @param maxIntervals Maximum number of intervals per face
+     * @return intervals of packed PD codes, in ascending face
+     * */
+    public static List<MortonIntervals> toFaceMortonIntervals(GeoCoordinates minCoords, GeoCoordinates maxCoords, int resolution, int maxIntervals) {
+        if(minCoords.getDimension() != maxCoords.getDimension()) {
+            throw new IllegalArgumentException();
+        }
+
+        ArrayList<QueryRange> queryList = translateQueryRange(minCoords, maxCoords, resolution);
+        ArrayList<MortonIntervals> result = new ArrayList<>();
+        int from = 0;
+        while(from < queryList.size()) {
+            final int face = queryList.get(from).face;
+            int to = from + 1;
+            while(to < queryList.size() && queryList.get(to).face == face) to++;
+            result.add(MortonIntervals.ofQueryRanges(face, queryList.subList(from, to), resolution, minCoords.getDimension(), maxIntervals));
+            from = to;
         }
 
-        long tempX = queryLU._faceCoordinates.getX(); // minimum X value of given range
-        for(int i = 0; i < bottomBoundaryValueList.size(); i++) {
-            long min = bottomBoundaryValueList.get(i);
-            long max = topBoundaryValueList.get(i);
-            long[] minPoint, maxPoint;
+        return result;
+    }
+
+    /**
+     * Translates a given bounding box into query ranges of ISEA4D face coordinates, one range of Y per X column.
+     * The ranges cover every cell intersecting the bounding box (see {@link QueryRangePlanner}).
+     *
+     * @param coordLL Minimum geodetic coordinates of bounding cube (or box)
+     * @param coordRU Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of the query ranges
+     * @return query ranges, in ascending face and X
+     * */
+    public static ArrayList<QueryRange> translateQueryRange(GeoCoordinates coordLL, GeoCoordinates coordRU, int resolution) {
+        return QueryRangePlanner.planQueryRange(coordLL, coordRU, resolution);
+    }
+
+    /**
+     * Iterator querying the ranges on demand. PD codes are deduplicated only if the ranges overlap,
+     * since a point of the tree is in one range otherwise.
+     */
+    static class ResultIterator implements Iterator<String> {
+        private final PhTree<String> _phTree;
+        private final List<QueryRange> _queryList;
+        private final HashSet<String> _seen;
+        private PhTree.PhQuery<String> _query;
+        private int _index = -1;
+        private String _next;
+
+        ResultIterator(PhTree<String> phTree, List<QueryRange> queryList) {
+            _phTree = phTree;
+            _queryList = queryList;
+            _seen = overlaps(queryList) ? new HashSet<>() : null;
+        }
 
-            if(coordLL.getDimension() == 2) {
-                minPoint = new long[]{tempX, min};
-                maxPoint = new long[]{tempX, max};
-            } else {
-                minPoint = new long[]{tempX, min, queryLL._faceCoordinates.getZ()};
-                maxPoint = new long[]{tempX, max, queryRU._faceCoordinates.getZ()};
+        @Override
+        public boolean hasNext() {
+            while(_next == null) {
+                if(_query != null && _query.hasNext()) {
+                    String pdCode = _query.nextValue();
+                    if(!isOnFace(pdCode, _queryList.get(_index).face))
+                        continue;
+                    if(_seen == null || _seen.add(pdCode))
+                        _next = pdCode;
+                } else if(_index + 1 < _queryList.size()) {
+                    QueryRange qr = _queryList.get(++_index);
+                    if(_query == null)
+                        _query = _phTree.query(qr.minPoint, qr.maxPoint);
+                    else
+                        _query.reset(qr.minPoint, qr.maxPoint);
+                } else {
+                    return false;
+                }
             }
-            tempX++;
+            return true;
+        }
 
-            queryList.add(new QueryRange(minPoint, maxPoint));
+        @Override
+        public String next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            String pdCode = _next;
+            _next = null;
+            return pdCode;
         }
 
-        return queryList;
+        /**
+         * @return true if two ranges of a face have a common point
+         */
+        static boolean overlaps(List<QueryRange> queryList) {
+            // # Ranges of the planner are single X columns in ascending face and X
+            boolean columns = true;
+            for(int i = 0; i < queryList.size() && columns; i++) {
+                QueryRange qr = queryList.get(i);
+                QueryRange previous = i == 0 ? null : queryList.get(i - 1);
+                columns = qr.minPoint[0] == qr.maxPoint[0]
+                        && (previous == null || previous.face < qr.face || previous.face == qr.face && previous.maxPoint[0] < qr.minPoint[0]);
+            }
+            if(columns) return false;
+
+            for(int i = 0; i < queryList.size(); i++) {
+                for(int j = i + 1; j < queryList.size(); j++) {
+                    QueryRange a = queryList.get(i);
+                    QueryRange b = queryList.get(j);
+                    boolean common = a.face == b.face;
+                    for(int d = 0; d < a.minPoint.length && common; d++) {
+                        common = a.minPoint[d] <= b.maxPoint[d] && b.minPoint[d] <= a.maxPoint[d];
+                    }
+                    if(common) return true;
+                }
+            }
+            return false;
+        }
     }
 
     static class QueryPoint {
@@ -167,10 +337,12 @@ public class BBoxQuery {
     }
 
     static class QueryRange {
+        int face;
         long[] minPoint;
         long[] maxPoint;
 
-        QueryRange(long[] minPoint, long[] maxPoint) {
+        QueryRange(int face, long[] minPoint, long[] maxPoint) {
+            this.face = face;
             this.minPoint = minPoint;
             this.maxPoint = maxPoint;
         }
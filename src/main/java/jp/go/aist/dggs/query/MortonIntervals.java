@@ -0,0 +1,386 @@
+package jp.go.aist.dggs.query;
+
+import jp.go.aist.dggs.geometry.Morton2D;
+import jp.go.aist.dggs.geometry.Morton3D;
+import jp.go.aist.dggs.utils.PackedPDCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import static jp.go.aist.dggs.common.DGGS.*;
+
+/**
+ * Decomposition of a query region on one rhombus face into contiguous intervals of packed PD codes.
+ *
+ * The region is a set of X columns, each with a range of Y (as produced by BBoxQuery.translateQueryRange),
+ * and a common range of Z for 3-D codes. The cells of the face are refined level by level: a cell inside the region
+ * becomes one interval, a cell outside is skipped, and a cell on the border is refined until the query resolution.
+ * If refining a level would exceed the maximum number of intervals, the border cells are kept as whole intervals,
+ * and their codes are filtered by {@link #contains(long)} when they are scanned.
+ *
+ * Intervals are inclusive ranges of packed PD codes. In a store sorted by packed PD code, each interval is one range scan.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class MortonIntervals {
+    public static final int DEFAULT_MAX_INTERVALS = 256;
+
+    private static final byte OUTSIDE = 0;
+    private static final byte INSIDE = 1;
+    private static final byte BORDER = 2;
+
+    private final int _face;
+    private final int _resolution;
+    private final int _dimension;
+    private final long _minX;
+    private final long _maxX;
+    private final long _minZ;
+    private final long _maxZ;
+    private final long[] _minY;
+    private final long[] _maxY;
+    // Sparse tables for range minimum/maximum over the columns: [level][column]
+    private final long[][] _minOfMinY;
+    private final long[][] _maxOfMinY;
+    private final long[][] _minOfMaxY;
+    private final long[][] _maxOfMaxY;
+    private final long[] _intervals;
+    private final boolean[] _exact;
+
+    private MortonIntervals(int face, int resolution, int dimension, long minX, long[] minY, long[] maxY, long minZ, long maxZ, int maxIntervals) {
+        if (dimension != 2 && dimension != 3)
+            throw new IllegalArgumentException("invalid dimension: " + dimension);
+        if (resolution < 0 || resolution > (dimension == 3 ? MAX_PACKED_3D_RESOLUTION : MAX_PACKED_2D_RESOLUTION))
+            throw new IllegalArgumentException("resolution is out of range for packed PD codes: " + resolution);
+        if (minY.length == 0 || minY.length != maxY.length)
+            throw new IllegalArgumentException("invalid columns");
+        if (maxIntervals < 1)
+            throw new IllegalArgumentException("invalid maximum number of intervals: " + maxIntervals);
+        this._face = face;
+        this._resolution = resolution;
+        this._dimension = dimension;
+        this._minX = minX;
+        this._maxX = minX + minY.length - 1;
+        this._minY = minY;
+        this._maxY = maxY;
+        this._minZ = minZ;
+        this._maxZ = maxZ;
+        this._minOfMinY = sparseTable(minY, false);
+        this._maxOfMinY = sparseTable(minY, true);
+        this._minOfMaxY = sparseTable(maxY, false);
+        this._maxOfMaxY = sparseTable(maxY, true);
+
+        List<long[]> intervals = this.decompose(maxIntervals);
+        this._intervals = new long[intervals.size() * 2];
+        this._exact = new boolean[intervals.size()];
+        for (int i = 0; i < intervals.size(); i++) {
+            this._intervals[i * 2] = intervals.get(i)[0];
+            this._intervals[i * 2 + 1] = intervals.get(i)[1];
+            this._exact[i] = intervals.get(i)[2] == INSIDE;
+        }
+    }
+
+    /**
+     * Intervals of a box of 3-D ISEA4D face coordinates.
+     *
+     * @param face          Index of rhombuses (= diamond) from 0 to 9
+     * @param minPoint      Minimum X, Y and Z (inclusive) at the given resolution
+     * @param maxPoint      Maximum X, Y and Z (inclusive) at the given resolution
+     * @param resolution    Resolution of the box (up to MAX_PACKED_3D_RESOLUTION)
+     * @param maxIntervals  Maximum number of intervals
+     * @return intervals of the box
+     */
+    public static MortonIntervals ofBox3D(int face, long[] minPoint, long[] maxPoint, int resolution, int maxIntervals) {
+        return ofBox(face, minPoint, maxPoint, resolution, 3, maxIntervals);
+    }
+
+    /**
+     * Intervals of a box of 2-D ISEA4D face coordinates.
+     *
+     * @param face          Index of rhombuses (= diamond) from 0 to 9
+     * @param minPoint      Minimum X and Y (inclusive) at the given resolution
+     * @param maxPoint      Maximum X and Y (inclusive) at the given resolution
+     * @param resolution    Resolution of the box (up to MAX_PACKED_2D_RESOLUTION)
+     * @param maxIntervals  Maximum number of intervals
+     * @return intervals of the box
+     */
+    public static MortonIntervals ofBox2D(int face, long[] minPoint, long[] maxPoint, int resolution, int maxIntervals) {
+        return ofBox(face, minPoint, maxPoint, resolution, 2, maxIntervals);
+    }
+
+    private static MortonIntervals ofBox(int face, long[] minPoint, long[] maxPoint, int resolution, int dimension, int maxIntervals) {
+        if (minPoint[0] > maxPoint[0] || minPoint[1] > maxPoint[1])
+            throw new IllegalArgumentException("invalid box");
+        int width = (int) (maxPoint[0] - minPoint[0] + 1);
+        long[] minY = new long[width];
+        long[] maxY = new long[width];
+        Arrays.fill(minY, minPoint[1]);
+        Arrays.fill(maxY, maxPoint[1]);
+        return new MortonIntervals(face, resolution, dimension, minPoint[0], minY, maxY,
+                dimension == 3 ? minPoint[2] : 0, dimension == 3 ? maxPoint[2] : 0, maxIntervals);
+    }
+
+    /**
+     * Intervals of the query ranges of BBoxQuery.translateQueryRange (one range per X column, in ascending X).
+     */
+    static MortonIntervals ofQueryRanges(int face, List<BBoxQuery.QueryRange> queryList, int resolution, int dimension, int maxIntervals) {
+        long[] minY = new long[queryList.size()];
+        long[] maxY = new long[queryList.size()];
+        for (int i = 0; i < queryList.size(); i++) {
+            minY[i] = queryList.get(i).minPoint[1];
+            maxY[i] = queryList.get(i).maxPoint[1];
+        }
+        BBoxQuery.QueryRange first = queryList.get(0);
+        return new MortonIntervals(face, resolution, dimension, first.minPoint[0], minY, maxY,
+                dimension == 3 ? first.minPoint[2] : 0, dimension == 3 ? first.maxPoint[2] : 0, maxIntervals);
+    }
+
+    /**
+     * @return Number of intervals
+     */
+    public int size() {
+        return this._exact.length;
+    }
+
+    /**
+     * @param i Index of the interval
+     * @return Lowest packed PD code of the interval (inclusive)
+     */
+    public long getLow(int i) {
+        return this._intervals[i * 2];
+    }
+
+    /**
+     * @param i Index of the interval
+     * @return Highest packed PD code of the interval (inclusive)
+     */
+    public long getHigh(int i) {
+        return this._intervals[i * 2 + 1];
+    }
+
+    /**
+     * @param i Index of the interval
+     * @return true if all codes of the interval at the query resolution are in the region,
+     * false if the codes must be filtered by {@link #contains(long)}
+     */
+    public boolean isExact(int i) {
+        return this._exact[i];
+    }
+
+    /**
+     * @param packedCode packed PD code at the query resolution
+     * @return true if the cell of the packed PD code is in the region
+     */
+    public boolean contains(long packedCode) {
+        return PackedPDCode.getFace(packedCode) == this._face
+                && this.classify(packedCode, new long[4]) == INSIDE;
+    }
+
+    /**
+     * Range scans of the intervals over a sorted array of packed PD codes at the query resolution.
+     * Between the intervals, and over codes outside the region inside a non-exact interval,
+     * the scan jumps forward by binary search instead of visiting each code.
+     *
+     * @param sortedCodes   packed PD codes in ascending order
+     * @param action        called for each code in the region, in ascending order
+     * @return number of codes in the region
+     */
+    public int scan(long[] sortedCodes, LongConsumer action) {
+        return this.scan(sortedCodes, 0, sortedCodes.length, action);
+    }
+
+    /**
+     * Range scans of the intervals over the range [from, to) of a sorted array of packed PD codes at the query resolution.
+     *
+     * @param sortedCodes   packed PD codes in ascending order
+     * @param from          First index (inclusive)
+     * @param to            Last index (exclusive)
+     * @param action        called for each code in the region, in ascending order
+     * @return number of codes in the region
+     */
+    public int scan(long[] sortedCodes, int from, int to, LongConsumer action) {
+        int count = 0;
+        int pos = from;
+        long[] faceCoordinates = new long[4];
+        for (int i = 0; i < this.size() && pos < to; i++) {
+            final long high = this.getHigh(i);
+            pos = lowerBound(sortedCodes, pos, to, this.getLow(i));
+            while (pos < to && sortedCodes[pos] <= high) {
+                final long code = sortedCodes[pos];
+                if (this._exact[i]) {
+                    action.accept(code);
+                    count++;
+                    pos++;
+                } else if (PackedPDCode.getFace(code) == this._face && this.classify(code, faceCoordinates) == INSIDE) {
+                    action.accept(code);
+                    count++;
+                    pos++;
+                } else {
+                    // # Skip the largest ancestor outside the region (BIGMIN): the next candidate follows its descendants
+                    pos = lowerBound(sortedCodes, pos + 1, to, this.outsideAncestorEnd(code, faceCoordinates) + 1);
+                }
+            }
+        }
+        return count;
+    }
+
+    private List<long[]> decompose(int maxIntervals) {
+        // # Leaves of the refinement {code, OUTSIDE/INSIDE/BORDER}; together they cover the face
+        List<long[]> leaves = new ArrayList<>();
+        // # Work lists of the cells of a level and of the border cells to refine, reused by all levels
+        long[] border = {this._dimension == 3 ? Morton3D.encodeLong(this._face, 0, 0, 0, 0) : Morton2D.encodeLong(this._face, 0, 0, 0)};
+        int borderSize = 1;
+        long[] next = new long[border.length];
+        long[] faceCoordinates = new long[4];
+        int nonOutside = 0;
+        for (int level = 0; borderSize > 0; level++) {
+            int nextSize = 0;
+            for (int i = 0; i < borderSize; i++) {
+                final long cell = border[i];
+                byte type = this.classify(cell, faceCoordinates);
+                if (type == BORDER && level < this._resolution) {
+                    if (nextSize == next.length) next = Arrays.copyOf(next, 2 * nextSize);
+                    next[nextSize++] = cell;
+                } else {
+                    leaves.add(new long[] {cell, type});
+                    if (type != OUTSIDE) nonOutside++;
+                }
+            }
+            int fanout = this._dimension == 3 && level >= MAX_XY_RESOLUTION - MAX_Z_RESOLUTION ? 8 : 4;
+            if (nonOutside + (long) nextSize * fanout > maxIntervals) {
+                // # Too many intervals: keep the border cells of this level as whole intervals
+                for (int i = 0; i < nextSize; i++) leaves.add(new long[] {next[i], BORDER});
+                break;
+            }
+            if (border.length < nextSize * fanout) border = new long[nextSize * fanout];
+            borderSize = 0;
+            for (int i = 0; i < nextSize; i++) {
+                for (long child : this._dimension == 3 ? Morton3D.children(next[i]) : Morton2D.children(next[i])) border[borderSize++] = child;
+            }
+        }
+
+        // # Merge consecutive leaves that are not outside into one interval
+        leaves.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> intervals = new ArrayList<>();
+        long[] current = null;
+        for (long[] leaf : leaves) {
+            if (leaf[1] == OUTSIDE) {
+                current = null;
+                continue;
+            }
+            long last = this.lastDescendant(leaf[0]);
+            if (current == null) {
+                current = new long[] {leaf[0], last, leaf[1]};
+                intervals.add(current);
+            } else {
+                current[1] = last;
+                if (leaf[1] != INSIDE) current[2] = BORDER;
+            }
+        }
+        return intervals;
+    }
+
+    /**
+     * Classifies the cell of a packed PD code (at any resolution up to the query resolution) against the region.
+     * The work buffer is owned by the caller, so that an instance can be shared by threads.
+     *
+     * @param faceCoordinates Work buffer of the decoded face coordinates
+     */
+    private byte classify(long packedCode, long[] faceCoordinates) {
+        final int resolution = PackedPDCode.getResolution(packedCode);
+        if (resolution > this._resolution) return this.classify(this.parent(packedCode, this._resolution), faceCoordinates);
+        final int shift = this._resolution - resolution;
+        if (this._dimension == 3) Morton3D.decodeLong(packedCode, faceCoordinates);
+        else Morton2D.decodeLong(packedCode, faceCoordinates);
+
+        // # Cell extent at the query resolution
+        final long x0 = faceCoordinates[1] << shift;
+        final long x1 = x0 + (1L << shift) - 1;
+        final long y0 = faceCoordinates[2] << shift;
+        final long y1 = y0 + (1L << shift) - 1;
+        boolean zInside = true;
+        if (this._dimension == 3) {
+            final int zShift = toZResolution(this._resolution) - toZResolution(resolution);
+            final long z0 = faceCoordinates[3] << zShift;
+            final long z1 = z0 + (1L << zShift) - 1;
+            if (z1 < this._minZ || z0 > this._maxZ) return OUTSIDE;
+            zInside = this._minZ <= z0 && z1 <= this._maxZ;
+        }
+        if (x1 < this._minX || x0 > this._maxX) return OUTSIDE;
+
+        final int a = (int) (Math.max(x0, this._minX) - this._minX);
+        final int b = (int) (Math.min(x1, this._maxX) - this._minX);
+        if (y1 < query(this._minOfMinY, a, b, false) || y0 > query(this._maxOfMaxY, a, b, true)) return OUTSIDE;
+        if (zInside && this._minX <= x0 && x1 <= this._maxX
+                && query(this._maxOfMinY, a, b, true) <= y0 && y1 <= query(this._minOfMaxY, a, b, false))
+            return INSIDE;
+        return BORDER;
+    }
+
+    /**
+     * Last descendant of the largest ancestor of a code that is outside the region, or the code itself.
+     */
+    private long outsideAncestorEnd(long packedCode, long[] faceCoordinates) {
+        final int resolution = Math.min(PackedPDCode.getResolution(packedCode), this._resolution);
+        for (int level = 0; level <= resolution; level++) {
+            long ancestor = this.parent(packedCode, level);
+            if (this.classify(ancestor, faceCoordinates) == OUTSIDE) return this.lastDescendant(ancestor);
+        }
+        return packedCode;
+    }
+
+    private long parent(long packedCode, int resolution) {
+        return this._dimension == 3 ? Morton3D.parent(packedCode, resolution) : Morton2D.parent(packedCode, resolution);
+    }
+
+    private long lastDescendant(long packedCode) {
+        return this._dimension == 3 ? Morton3D.descendantRange(packedCode)[1] : Morton2D.descendantRange(packedCode)[1];
+    }
+
+    private static int toZResolution(int resolution) {
+        return Math.max(0, resolution - (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION));
+    }
+
+    private static int lowerBound(long[] sortedCodes, int from, int to, long key) {
+        // # Galloping search from the current position, then binary search
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < to && sortedCodes[high] < key) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+        high = Math.min(high, to);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedCodes[mid] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private static long[][] sparseTable(long[] values, boolean max) {
+        int levels = 32 - Integer.numberOfLeadingZeros(values.length);
+        long[][] table = new long[levels][];
+        table[0] = values;
+        for (int k = 1; k < levels; k++) {
+            int length = values.length - (1 << k) + 1;
+            table[k] = new long[length];
+            for (int i = 0; i < length; i++) {
+                long l = table[k - 1][i];
+                long r = table[k - 1][i + (1 << (k - 1))];
+                table[k][i] = max ? Math.max(l, r) : Math.min(l, r);
+            }
+        }
+        return table;
+    }
+
+    private static long query(long[][] table, int from, int to, boolean max) {
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        long l = table[k][from];
+        long r = table[k][to - (1 << k) + 1];
+        return max ? Math.max(l, r) : Math.min(l, r);
+    }
+}
@@ -0,0 +1,420 @@
+package jp.go.aist.dggs.query;
+
+import jp.go.aist.dggs.utils.MortonUtils;
+import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import org.giscience.utils.geogrid.projections.ISEAProjection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static jp.go.aist.dggs.common.DGGS.CELL_SIZE_METER_AT_RESOLUTION;
+import static jp.go.aist.dggs.common.DGGS.MAX_XY_RESOLUTION;
+import static jp.go.aist.dggs.common.DGGS.METERS_PER_DEGREE;
+
+/**
+ * Translation of a bounding box of geodetic coordinates into query ranges of ISEA4D face coordinates,
+ * one range of Y per X column, like {@link BBoxQuery#translateQueryRange(GeoCoordinates, GeoCoordinates, int)}.
+ *
+ * The four edges of the box are projected forward into face coordinates once, at a few points per edge
+ * (subdivided until each edge is within AMBIGUITY of its polyline), and the resulting polylines are rasterized
+ * column by column. Only where an edge passes within AMBIGUITY of a cell border, the edge is projected again
+ * at more points to decide the cell. No inverse projection is needed.
+ * The ranges cover every cell intersecting the projected box.
+ *
+ * A box across rhombus faces is clipped against the faces: where an edge of the box leaves a face, the point
+ * on the face edge is found by bisection, and the polygon on each face is closed along the side of the rhombus,
+ * which is a straight line in face coordinates. If a polygon cannot be closed along one side (e.g. a vertex of
+ * the rhombus is in the box), the box is split in two halves, down to half a cell around the vertex.
+ * Such a small part is covered conservatively: on each face, by the cells between the cells of a few points
+ * of the part, and one more cell around them.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class QueryRangePlanner {
+    private static final double SEGMENT_LENGTH = 4;         // Maximum length of a segment of the polylines (UoM: cell)
+    private static final double AMBIGUITY = 1e-2;           // Distance from a cell border to check again (UoM: cell)
+    private static final int REFINEMENT = 16;               // Number of points to check again a segment
+    private static final int BISECTION = 48;                // Number of steps to find a point on a face edge
+    private static final int MAX_SUBDIVISION = 16;          // Maximum depth of subdivision of a segment
+    private static final int SAMPLES = 4;                   // Number of intervals per side of a part smaller than a cell
+    private static final ISEAProjection PROJECTION = new ISEAProjection();
+
+    private final double _scale;
+    private final double _size;
+    private final long[] _faceCoordinates = new long[4];
+    private final TreeMap<Long, long[]> _columns;
+
+    private QueryRangePlanner(int resolution, TreeMap<Long, long[]> columns) {
+        this._scale = 1.0d / (1L << (MAX_XY_RESOLUTION - resolution));
+        this._size = 1L << resolution;
+        this._columns = columns;
+    }
+
+    /**
+     * Returns query ranges (one per X column, in ascending face and X) of the cells intersecting a given bounding box.
+     * The columns of each face are contiguous.
+     *
+     * @param coordLL Minimum geodetic coordinates of bounding cube (or box)
+     * @param coordRU Maximum geodetic coordinates of bounding cube (or box)
+     * @param resolution Resolution of the query ranges
+     * @return query ranges
+     * @throws IllegalArgumentException if the resolution is out of range, the dimensions differ or a height is out of range
+     */
+    public static ArrayList<BBoxQuery.QueryRange> planQueryRange(GeoCoordinates coordLL, GeoCoordinates coordRU, int resolution) {
+        if (resolution < 0 || resolution > MAX_XY_RESOLUTION)
+            throw new IllegalArgumentException("invalid resolution: " + resolution);
+        if (coordLL.getDimension() != coordRU.getDimension())
+            throw new IllegalArgumentException();
+
+        // # Columns of all faces: key is face and X, value is minimum and maximum Y
+        TreeMap<Long, long[]> columns = new TreeMap<>();
+        plan(coordLL.getLat(), coordLL.getLon(), coordRU.getLat(), coordRU.getLon(), resolution, columns);
+
+        long minZ = 0;
+        long maxZ = 0;
+        if (coordLL.getDimension() == 3) {
+            minZ = MortonUtils.toFaceCoordinate(MortonUtils.toFaceCoordinate(PROJECTION, coordLL), resolution).getZ();
+            maxZ = MortonUtils.toFaceCoordinate(MortonUtils.toFaceCoordinate(PROJECTION, coordRU), resolution).getZ();
+        }
+
+        ArrayList<BBoxQuery.QueryRange> queryList = new ArrayList<>(columns.size());
+        Map.Entry<Long, long[]> previous = null;
+        for (Map.Entry<Long, long[]> column : columns.entrySet()) {
+            // # Fill a gap between columns of a face with both neighbors (it does not occur for a connected polygon)
+            if (previous != null && previous.getKey() >>> MAX_XY_RESOLUTION == column.getKey() >>> MAX_XY_RESOLUTION) {
+                long[] gap = {Math.min(previous.getValue()[0], column.getValue()[0]), Math.max(previous.getValue()[1], column.getValue()[1])};
+                for (long key = previous.getKey() + 1; key < column.getKey(); key++)
+                    queryList.add(toQueryRange(key, gap, coordLL.getDimension(), minZ, maxZ));
+            }
+            queryList.add(toQueryRange(column.getKey(), column.getValue(), coordLL.getDimension(), minZ, maxZ));
+            previous = column;
+        }
+        return queryList;
+    }
+
+    private static BBoxQuery.QueryRange toQueryRange(long key, long[] y, int dimension, long minZ, long maxZ) {
+        int face = (int) (key >>> MAX_XY_RESOLUTION);
+        long x = key & ((1L << MAX_XY_RESOLUTION) - 1);
+        if (dimension == 2)
+            return new BBoxQuery.QueryRange(face, new long[]{x, y[0]}, new long[]{x, y[1]});
+        return new BBoxQuery.QueryRange(face, new long[]{x, y[0], minZ}, new long[]{x, y[1], maxZ});
+    }
+
+    /**
+     * Adds the columns of a part of the box, split in halves if it cannot be clipped against the faces.
+     * The columns added by a failed attempt are kept: they are cells of the part.
+     */
+    private static void plan(double lat0, double lon0, double lat1, double lon1, int resolution, TreeMap<Long, long[]> columns) {
+        QueryRangePlanner planner = new QueryRangePlanner(resolution, columns);
+        if (planner.tryPlan(lat0, lon0, lat1, lon1))
+            return;
+
+        // # Half a cell in degrees of latitude, and at most in degrees of longitude
+        double minSpan = CELL_SIZE_METER_AT_RESOLUTION[resolution] / METERS_PER_DEGREE / 2;
+        if (lat1 - lat0 <= minSpan && lon1 - lon0 <= minSpan) {
+            // # The part is about a cell: add the cells between the cells of its points, and one more cell around them
+            HashMap<Integer, long[]> bounds = new HashMap<>();
+            for (int i = 0; i <= SAMPLES; i++) {
+                for (int j = 0; j <= SAMPLES; j++) {
+                    Vertex v = planner.project(lat0 + (lat1 - lat0) * i / SAMPLES, lon0 + (lon1 - lon0) * j / SAMPLES, -1, 0);
+                    if (v == null)
+                        continue;
+                    long[] b = bounds.computeIfAbsent(v.face, face -> new long[] {Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE});
+                    b[0] = Math.min(b[0], (long) Math.floor(v.x));
+                    b[1] = Math.min(b[1], (long) Math.floor(v.y));
+                    b[2] = Math.max(b[2], (long) Math.floor(v.x));
+                    b[3] = Math.max(b[3], (long) Math.floor(v.y));
+                }
+            }
+            final long last = (long) planner._size - 1;
+            for (Map.Entry<Integer, long[]> b : bounds.entrySet()) {
+                long[] cells = b.getValue();
+                for (long x = Math.max(0, cells[0] - 1); x <= Math.min(last, cells[2] + 1); x++)
+                    planner.add(b.getKey(), x, Math.max(0, cells[1] - 1), Math.min(last, cells[3] + 1));
+            }
+            return;
+        }
+
+        if (lat1 - lat0 > lon1 - lon0) {
+            double lat = (lat0 + lat1) / 2;
+            plan(lat0, lon0, lat, lon1, resolution, columns);
+            plan(lat, lon0, lat1, lon1, resolution, columns);
+        } else {
+            double lon = (lon0 + lon1) / 2;
+            plan(lat0, lon0, lat1, lon, resolution, columns);
+            plan(lat0, lon, lat1, lon1, resolution, columns);
+        }
+    }
+
+    /**
+     * Rasterizes a part of the box, clipped against the faces.
+     *
+     * @return false if the part cannot be clipped
+     */
+    private boolean tryPlan(double lat0, double lon0, double lat1, double lon1) {
+        // # Edges of the box: bottom, right, top and left, as (lat, lon) from t = 0 to t = 1
+        double[][] edges = {
+                {lat0, lon0, lat0, lon1},
+                {lat0, lon1, lat1, lon1},
+                {lat1, lon1, lat1, lon0},
+                {lat1, lon0, lat0, lon0},
+        };
+
+        // # Project the edges forward, at most SEGMENT_LENGTH cells apart, with the points on the face edges
+        ArrayList<Vertex> ring = new ArrayList<>();
+        for (int e = 0; e < edges.length; e++) {
+            Vertex from = this.project(edges, e, 0);
+            Vertex to = this.project(edges, e, 1);
+            if (from == null || to == null || !this.sample(edges, from, to, ring))
+                return false;
+        }
+
+        // # Rasterize each segment on a face column by column
+        final int n = ring.size();
+        int entry = -1;
+        for (int i = 0; i < n; i++) {
+            Vertex v = ring.get(i);
+            Vertex w = ring.get((i + 1) % n);
+            if (v.face != w.face)
+                entry = (i + 1) % n;
+            else if (!this.rasterize(v.face, edges[v.edge], v.t, w.edge == v.edge ? w.t : 1, v.x, v.y, w.x, w.y))
+                return false;
+        }
+        if (entry < 0)
+            return true;
+
+        // # Close the polygon of each face from each exit to the next entry of the face, along a side of the rhombus
+        HashMap<Integer, Vertex> firstEntries = new HashMap<>();
+        HashMap<Integer, Vertex> exits = new HashMap<>();
+        for (int k = 0; k < n; k++) {
+            int i = (entry + k) % n;
+            Vertex v = ring.get(i);
+            if (ring.get((i + n - 1) % n).face != v.face) {
+                Vertex exit = exits.remove(v.face);
+                if (exit == null)
+                    firstEntries.putIfAbsent(v.face, v);
+                else if (!this.chord(exit, v))
+                    return false;
+            }
+            if (ring.get((i + 1) % n).face != v.face)
+                exits.put(v.face, v);
+        }
+        for (Vertex exit : exits.values()) {
+            if (!this.chord(exit, firstEntries.get(exit.face)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the points of an edge from a given point (inclusive) to another (exclusive) to the ring.
+     *
+     * @return false if a point cannot be projected
+     */
+    private boolean sample(double[][] edges, Vertex from, Vertex to, List<Vertex> ring) {
+        if (from.face != to.face) {
+            // # Find the face edge between the points by bisection
+            Vertex a = from;
+            Vertex b = to;
+            for (int i = 0; i < BISECTION; i++) {
+                Vertex m = this.project(edges, from.edge, (a.t + b.t) / 2);
+                if (m == null)
+                    break;  // on the face edge
+                if (m.face == a.face)
+                    a = m;
+                else if (m.face == b.face)
+                    b = m;
+                else
+                    return this.sample(edges, from, m, ring) && this.sample(edges, m, to, ring);
+            }
+            if (!this.sample(edges, from, a, ring))
+                return false;
+            ring.add(a);
+            return this.sample(edges, b, to, ring);
+        }
+
+        int n = Math.max(1, (int) Math.ceil(Math.hypot(to.x - from.x, to.y - from.y) / SEGMENT_LENGTH));
+        Vertex[] points = new Vertex[n];
+        points[0] = from;
+        for (int i = 1; i < n; i++) {
+            points[i] = this.project(edges, from.edge, from.t + (to.t - from.t) * i / n);
+            if (points[i] == null)
+                return false;
+            if (points[i].face != from.face)
+                return this.sample(edges, from, points[i], ring) && this.sample(edges, points[i], to, ring);
+        }
+        for (int i = 0; i < n; i++) {
+            if (!this.subdivide(edges, points[i], i + 1 < n ? points[i + 1] : to, ring, 0))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a point of an edge to the ring, and the points until the next point (exclusive),
+     * such that the edge is within AMBIGUITY of the segments between the points (checked at the middle of each segment).
+     *
+     * @return false if a point cannot be projected
+     */
+    private boolean subdivide(double[][] edges, Vertex from, Vertex to, List<Vertex> ring, int depth) {
+        Vertex m = this.project(edges, from.edge, (from.t + to.t) / 2);
+        if (m == null)
+            return false;
+        if (m.face != from.face)
+            return this.sample(edges, from, m, ring) && this.sample(edges, m, to, ring);
+        if (depth < MAX_SUBDIVISION && Math.hypot(m.x - (from.x + to.x) / 2, m.y - (from.y + to.y) / 2) > AMBIGUITY)
+            return this.subdivide(edges, from, m, ring, depth + 1) && this.subdivide(edges, m, to, ring, depth + 1);
+        ring.add(from);
+        return true;
+    }
+
+    /**
+     * Updates the columns crossed by the segment from (x0, y0) at t0 to (x1, y1) at t1 of an edge,
+     * or by a straight segment if the edge is null.
+     * The edge is within AMBIGUITY of the segment (see {@link #subdivide}): where the cells within AMBIGUITY
+     * of the segment are not the cells of the segment, the edge is projected again at more points.
+     *
+     * @return false if the segment is not on the face
+     */
+    private boolean rasterize(int face, double[] edge, double t0, double t1, double x0, double y0, double x1, double y1) {
+        final double margin = edge == null ? 0 : AMBIGUITY;
+        // # Margin of Y for a distance of AMBIGUITY from the segment
+        final double marginY = x0 == x1 ? margin : margin * (1 + Math.abs((y1 - y0) / (x1 - x0)));
+        final double[] range = new double[2];
+        long fromColumn = (long) Math.floor(Math.min(x0, x1) - margin);
+        long toColumn = (long) Math.floor(Math.max(x0, x1) + margin);
+        for (long column = fromColumn; column <= toColumn; column++) {
+            // # Range of the segment in the column [column, column + 1), as s from 0 to 1
+            double s0 = 0;
+            double s1 = 1;
+            double marginS = 1;
+            if (x0 != x1) {
+                double a = (column - x0) / (x1 - x0);
+                double b = (column + 1 - x0) / (x1 - x0);
+                s0 = Math.min(a, b);
+                s1 = Math.max(a, b);
+                marginS = margin / Math.abs(x1 - x0);
+            } else if (column != (long) Math.floor(x0)) {
+                s0 = 1;
+                s1 = 0;
+            }
+            range[0] = Double.POSITIVE_INFINITY;
+            range[1] = Double.NEGATIVE_INFINITY;
+            clip(column, x0, y0, x1, y1, range);
+
+            // # Near a cell border, the segment may be on the wrong side of the edge: project the edge again
+            if (edge != null && (range[0] > range[1]
+                    || Math.floor(range[0] - marginY) != Math.floor(range[0]) || Math.floor(range[1] + marginY) != Math.floor(range[1]))) {
+                double sa = Math.max(0, s0 - marginS);
+                double sb = Math.min(1, s1 + marginS);
+                Vertex previous = null;
+                for (int k = 0; k <= REFINEMENT; k++) {
+                    double t = t0 + (t1 - t0) * (sa + (sb - sa) * k / REFINEMENT);
+                    Vertex p = this.project(edge[0] + (edge[2] - edge[0]) * t, edge[1] + (edge[3] - edge[1]) * t, -1, t);
+                    if (p == null || p.face != face)
+                        return false;
+                    if (previous != null)
+                        clip(column, previous.x, previous.y, p.x, p.y, range);
+                    previous = p;
+                }
+            }
+
+            if (range[0] <= range[1])
+                this.add(face, column, (long) Math.floor(range[0]), (long) Math.floor(range[1]));
+        }
+        return true;
+    }
+
+    /**
+     * Updates the minimum and maximum Y of a column with the part of a segment in the column [column, column + 1).
+     */
+    private static void clip(long column, double x0, double y0, double x1, double y1, double[] range) {
+        double s0 = 0;
+        double s1 = 1;
+        if (x0 != x1) {
+            double a = (column - x0) / (x1 - x0);
+            double b = (column + 1 - x0) / (x1 - x0);
+            s0 = Math.max(0, Math.min(a, b));
+            s1 = Math.min(1, Math.max(a, b));
+        } else if (column != (long) Math.floor(x0)) {
+            return;
+        }
+        if (s0 > s1)
+            return;
+        double ya = y0 + (y1 - y0) * s0;
+        double yb = y0 + (y1 - y0) * s1;
+        range[0] = Math.min(range[0], Math.min(ya, yb));
+        range[1] = Math.max(range[1], Math.max(ya, yb));
+    }
+
+    /**
+     * Rasterizes the segment from an exit of a face to an entry of the face, if both are on one side of the rhombus.
+     *
+     * @return false if the points are not on one side
+     */
+    private boolean chord(Vertex exit, Vertex entry) {
+        int side = this.side(exit);
+        if (side < 0 || side != this.side(entry))
+            return false;
+        return this.rasterize(exit.face, null, 0, 1, exit.x, exit.y, entry.x, entry.y);
+    }
+
+    /**
+     * @return side of the rhombus (0: X = 0, 1: X = max, 2: Y = 0, 3: Y = max) within one cell of a point, or -1
+     */
+    private int side(Vertex v) {
+        double[] distances = {v.x, this._size - v.x, v.y, this._size - v.y};
+        int side = 0;
+        for (int i = 1; i < distances.length; i++) {
+            if (distances[i] < distances[side])
+                side = i;
+        }
+        return distances[side] < 1 ? side : -1;
+    }
+
+    private void add(int face, long x, long minY, long maxY) {
+        long[] y = this._columns.computeIfAbsent((long) face << MAX_XY_RESOLUTION | x, key -> new long[] {Long.MAX_VALUE, Long.MIN_VALUE});
+        y[0] = Math.min(y[0], minY);
+        y[1] = Math.max(y[1], maxY);
+    }
+
+    private Vertex project(double[][] edges, int e, double t) {
+        double[] edge = edges[e];
+        return this.project(edge[0] + (edge[2] - edge[0]) * t, edge[1] + (edge[3] - edge[1]) * t, e, t);
+    }
+
+    /**
+     * @return ISEA4D face coordinates at the resolution of the planner (UoM: cell) of a point of an edge,
+     * or null if the point is not on any rhombus (e.g. on an edge of the icosahedron)
+     */
+    private Vertex project(double lat, double lon, int edge, double t) {
+        try {
+            MortonUtils.toFaceCoordinate(PROJECTION, new GeoCoordinates(lat, lon), this._faceCoordinates);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return new Vertex((int) this._faceCoordinates[0], this._faceCoordinates[1] * this._scale, this._faceCoordinates[2] * this._scale, edge, t);
+    }
+
+    /**
+     * Point of an edge of the box in face coordinates.
+     */
+    private static final class Vertex {
+        final int face;
+        final double x;
+        final double y;
+        final int edge;
+        final double t;
+
+        Vertex(int face, double x, double y, int edge, double t) {
+            this.face = face;
+            this.x = x;
+            this.y = y;
+            this.edge = edge;
+            this.t = t;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package jp.go.aist.dggs.utils;
+
+/**
+ * Branch-free bit interleaving (magic number, shift-and-mask) for Morton code.
+ * Each method gives the same bits as the lookup tables of jp.go.aist.dggs.common.DGGS
+ * (e.g. Morton2DTable256Encode, Morton3DTable256Encode), but handles all bits at once.
+ * A 3-D Morton code of 32-bits X/Y and 24-bits Z takes 88 bits, so it is split into parts (see interleave3D24).
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class BitInterleave {
+    private BitInterleave() {
+    }
+
+    /**
+     * Spread the lower 32 bits of the value to the even bits of a long (for 2-D Morton code).
+     *
+     * @param value 32-bits value
+     * @return spread value (bit i goes to bit 2i)
+     */
+    public static long spread2D(long value) {
+        value &= 0x00000000FFFFFFFFL;
+        value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+        value = (value | (value << 8))  & 0x00FF00FF00FF00FFL;
+        value = (value | (value << 4))  & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value << 2))  & 0x3333333333333333L;
+        value = (value | (value << 1))  & 0x5555555555555555L;
+        return value;
+    }
+
+    /**
+     * Inverse of {@link #spread2D(long)}: gather the even bits of a long.
+     *
+     * @param value spread value
+     * @return 32-bits value
+     */
+    public static long compact2D(long value) {
+        value &= 0x5555555555555555L;
+        value = (value | (value >>> 1))  & 0x3333333333333333L;
+        value = (value | (value >>> 2))  & 0x0F0F0F0F0F0F0F0FL;
+        value = (value | (value >>> 4))  & 0x00FF00FF00FF00FFL;
+        value = (value | (value >>> 8))  & 0x0000FFFF0000FFFFL;
+        value = (value | (value >>> 16)) & 0x00000000FFFFFFFFL;
+        return value;
+    }
+
+    /**
+     * Spread the lower 21 bits of the value to every third bit of a long (for 3-D Morton code).
+     *
+     * @param value 21-bits value
+     * @return spread value (bit i goes to bit 3i)
+     */
+    public static long spread3D(long value) {
+        value &= 0x00000000001FFFFFL;
+        value = (value | (value << 32)) & 0x001F00000000FFFFL;
+        value = (value | (value << 16)) & 0x001F0000FF0000FFL;
+        value = (value | (value << 8))  & 0x100F00F00F00F00FL;
+        value = (value | (value << 4))  & 0x10C30C30C30C30C3L;
+        value = (value | (value << 2))  & 0x1249249249249249L;
+        return value;
+    }
+
+    /**
+     * Inverse of {@link #spread3D(long)}: gather every third bit of a long.
+     *
+     * @param value spread value
+     * @return 21-bits value
+     */
+    public static long compact3D(long value) {
+        value &= 0x1249249249249249L;
+        value = (value | (value >>> 2))  & 0x10C30C30C30C30C3L;
+        value = (value | (value >>> 4))  & 0x100F00F00F00F00FL;
+        value = (value | (value >>> 8))  & 0x001F0000FF0000FFL;
+        value = (value | (value >>> 16)) & 0x001F00000000FFFFL;
+        value = (value | (value >>> 32)) & 0x00000000001FFFFFL;
+        return value;
+    }
+
+    /**
+     * Spread the lower 24 bits of the value (e.g. Z at MAX_Z_RESOLUTION) to every third bit of two longs,
+     * as 24 bits do not fit into a long once spread.
+     *
+     * @param value  24-bits value
+     * @param spread Output buffer: spread upper 12 bits, and spread lower 12 bits (36 bits each)
+     */
+    public static void spread3D24(long value, long[] spread) {
+        spread[0] = spread3D((value >>> 12) & 0xFFFL);
+        spread[1] = spread3D(value & 0xFFFL);
+    }
+
+    /**
+     * Inverse of {@link #spread3D24(long, long[])}: gather every third bit of two longs.
+     *
+     * @param upper spread upper 12 bits
+     * @param lower spread lower 12 bits
+     * @return 24-bits value
+     */
+    public static long compact3D24(long upper, long lower) {
+        return (compact3D(upper) & 0xFFFL) << 12 | (compact3D(lower) & 0xFFFL);
+    }
+
+    /**
+     * Interleave X, Y (32 bits each) and Z (24 bits) to the levels of a 3-D PD code: the upper 8 levels have only X and
+     * Y, and the lower 24 levels have X, Y and Z (Z is the upper bit of each level).
+     *
+     * @param x     32-bits value
+     * @param y     32-bits value
+     * @param z     24-bits value
+     * @param mCode Output buffer: 2-D Morton code of levels 1 to 8 (16 bits), and 3-D Morton codes of levels 9 to 20
+     *              and of levels 21 to 32 (36 bits each)
+     */
+    public static void interleave3D24(long x, long y, long z, long[] mCode) {
+        mCode[0] = interleave2D((x >>> 24) & 0xFFL, (y >>> 24) & 0xFFL);
+        mCode[1] = interleave3D((x >>> 12) & 0xFFFL, (y >>> 12) & 0xFFFL, (z >>> 12) & 0xFFFL);
+        mCode[2] = interleave3D(x & 0xFFFL, y & 0xFFFL, z & 0xFFFL);
+    }
+
+    /**
+     * Interleave X and Y (32 bits each) to a 64-bits 2-D Morton code (Y is the upper bit of each level).
+     *
+     * @param x 32-bits value
+     * @param y 32-bits value
+     * @return 2-D Morton code
+     */
+    public static long interleave2D(long x, long y) {
+        return spread2D(x) | (spread2D(y) << 1);
+    }
+
+    /**
+     * Interleave X, Y and Z (21 bits each) to a 63-bits 3-D Morton code (Z is the upper bit of each level).
+     *
+     * @param x 21-bits value
+     * @param y 21-bits value
+     * @param z 21-bits value
+     * @return 3-D Morton code
+     */
+    public static long interleave3D(long x, long y, long z) {
+        return spread3D(x) | (spread3D(y) << 1) | (spread3D(z) << 2);
+    }
+}
@@ -0,0 +1,186 @@
+package jp.go.aist.dggs.utils;
+
+/**
+ * Bulk distance calculation over columns of coordinates, e.g., orthogonal face coordinates or meter unit coordinates.
+ * The loops are simple counted loops without branches or allocation, such that the JIT compiler can vectorize them.
+ * The number of distances is given by the length of the output array.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class DistanceUtils {
+    private DistanceUtils() {
+    }
+
+    /**
+     * Squared 2-D distances from one point to many points.
+     *
+     * @param x         X of the point
+     * @param y         Y of the point
+     * @param xs        X of the other points
+     * @param ys        Y of the other points
+     * @param distances Output array of squared distances
+     */
+    public static void squaredDistances2D(double x, double y, double[] xs, double[] ys, double[] distances) {
+        for (int i = 0; i < distances.length; i++) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            distances[i] = dx * dx + dy * dy;
+        }
+    }
+
+    /**
+     * Squared 3-D distances from one point to many points.
+     *
+     * @param x         X of the point
+     * @param y         Y of the point
+     * @param z         Z of the point
+     * @param xs        X of the other points
+     * @param ys        Y of the other points
+     * @param zs        Z of the other points
+     * @param distances Output array of squared distances
+     */
+    public static void squaredDistances3D(double x, double y, double z, double[] xs, double[] ys, double[] zs, double[] distances) {
+        for (int i = 0; i < distances.length; i++) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            double dz = zs[i] - z;
+            distances[i] = dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * 2-D distances from one point to many points.
+     *
+     * @param x         X of the point
+     * @param y         Y of the point
+     * @param xs        X of the other points
+     * @param ys        Y of the other points
+     * @param distances Output array of distances
+     */
+    public static void distances2D(double x, double y, double[] xs, double[] ys, double[] distances) {
+        squaredDistances2D(x, y, xs, ys, distances);
+        sqrt(distances);
+    }
+
+    /**
+     * 3-D distances from one point to many points.
+     *
+     * @param x         X of the point
+     * @param y         Y of the point
+     * @param z         Z of the point
+     * @param xs        X of the other points
+     * @param ys        Y of the other points
+     * @param zs        Z of the other points
+     * @param distances Output array of distances
+     */
+    public static void distances3D(double x, double y, double z, double[] xs, double[] ys, double[] zs, double[] distances) {
+        squaredDistances3D(x, y, z, xs, ys, zs, distances);
+        sqrt(distances);
+    }
+
+    /**
+     * Squared 2-D distances from many points (A) to many points (B).
+     * The distance from A[i] to B[j] is written to {@code distances[i * bx.length + j]}.
+     *
+     * @param ax        X of the points A
+     * @param ay        Y of the points A
+     * @param bx        X of the points B
+     * @param by        Y of the points B
+     * @param distances Output array of squared distances (length is ax.length * bx.length)
+     */
+    public static void squaredDistances2D(double[] ax, double[] ay, double[] bx, double[] by, double[] distances) {
+        final int n = bx.length;
+        for (int i = 0; i < ax.length; i++) {
+            final double x = ax[i];
+            final double y = ay[i];
+            final int offset = i * n;
+            for (int j = 0; j < n; j++) {
+                double dx = bx[j] - x;
+                double dy = by[j] - y;
+                distances[offset + j] = dx * dx + dy * dy;
+            }
+        }
+    }
+
+    /**
+     * Squared 3-D distances from many points (A) to many points (B).
+     * The distance from A[i] to B[j] is written to {@code distances[i * bx.length + j]}.
+     *
+     * @param ax        X of the points A
+     * @param ay        Y of the points A
+     * @param az        Z of the points A
+     * @param bx        X of the points B
+     * @param by        Y of the points B
+     * @param bz        Z of the points B
+     * @param distances Output array of squared distances (length is ax.length * bx.length)
+     */
+    public static void squaredDistances3D(double[] ax, double[] ay, double[] az, double[] bx, double[] by, double[] bz, double[] distances) {
+        final int n = bx.length;
+        for (int i = 0; i < ax.length; i++) {
+            final double x = ax[i];
+            final double y = ay[i];
+            final double z = az[i];
+            final int offset = i * n;
+            for (int j = 0; j < n; j++) {
+                double dx = bx[j] - x;
+                double dy = by[j] - y;
+                double dz = bz[j] - z;
+                distances[offset + j] = dx * dx + dy * dy + dz * dz;
+            }
+        }
+    }
+
+    /**
+     * 2-D distances from many points (A) to many points (B).
+     * The distance from A[i] to B[j] is written to {@code distances[i * bx.length + j]}.
+     *
+     * @param ax        X of the points A
+     * @param ay        Y of the points A
+     * @param bx        X of the points B
+     * @param by        Y of the points B
+     * @param distances Output array of distances (length is ax.length * bx.length)
+     */
+    public static void distances2D(double[] ax, double[] ay, double[] bx, double[] by, double[] distances) {
+        squaredDistances2D(ax, ay, bx, by, distances);
+        sqrt(distances);
+    }
+
+    /**
+     * 3-D distances from many points (A) to many points (B).
+     * The distance from A[i] to B[j] is written to {@code distances[i * bx.length + j]}.
+     *
+     * @param ax        X of the points A
+     * @param ay        Y of the points A
+     * @param az        Z of the points A
+     * @param bx        X of the points B
+     * @param by        Y of the points B
+     * @param bz        Z of the points B
+     * @param distances Output array of distances (length is ax.length * bx.length)
+     */
+    public static void distances3D(double[] ax, double[] ay, double[] az, double[] bx, double[] by, double[] bz, double[] distances) {
+        squaredDistances3D(ax, ay, az, bx, by, bz, distances);
+        sqrt(distances);
+    }
+
+    /**
+     * ISEA4D face coordinates conversion to orthogonal coordinates, into caller-owned columns for the distance kernels.
+     * Each value is the same as {@code ISEA4DFaceCoordinates.toOrthogonal()} for the same resolution.
+     *
+     * @param x             X values of ISEA4D face coordinates
+     * @param y             Y values of ISEA4D face coordinates
+     * @param orthogonalX   Output array of orthogonal X
+     * @param orthogonalY   Output array of orthogonal Y
+     */
+    public static void toOrthogonal(long[] x, long[] y, double[] orthogonalX, double[] orthogonalY) {
+        for (int i = 0; i < x.length; i++) {
+            orthogonalX[i] = (long) SkewTransform.toOrthogonalX(x[i], y[i]);
+            orthogonalY[i] = (long) SkewTransform.toOrthogonalY(x[i], y[i]);
+        }
+    }
+
+    private static void sqrt(double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sqrt(values[i]);
+        }
+    }
+}
@@ -1,15 +1,17 @@
 package jp.go.aist.dggs.utils;
 
-import jp.go.aist.dggs.common.DGGS;
 import jp.go.aist.dggs.geometry.Morton2D;
 import jp.go.aist.dggs.geometry.Morton3D;
 import jp.go.aist.dggs.geometry.ISEA4DFaceCoordinates;
-import org.apache.commons.math3.linear.MatrixUtils;
-import org.apache.commons.math3.linear.RealMatrix;
-import org.giscience.utils.geogrid.geometry.FaceCoordinates;
 import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import org.giscience.utils.geogrid.geometry.MutableFaceCoordinates;
+import org.giscience.utils.geogrid.geometry.MutableGeoCoordinates;
 import org.giscience.utils.geogrid.projections.ISEAProjection;
 
+import java.nio.DoubleBuffer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
 import static jp.go.aist.dggs.common.DGGS.*;
 
 /**
@@ -21,6 +23,35 @@ import static jp.go.aist.dggs.common.DGGS.*;
  */
 
 public final class MortonUtils {
+    private static final int BATCH_BLOCK_SIZE = 4096;
+    /**
+     * Returned by the packed variants of getGreatestCommonAncestor if the codes are on different faces.
+     */
+    public static final long NO_COMMON_ANCESTOR = -1L;
+    /**
+     * Packed PD code of a point that could not be encoded by tryToPackedPDCodes.
+     */
+    public static final long INVALID_PACKED_PD_CODE = -1L;
+    /**
+     * Status of tryToPackedPDCodes: the point is encoded.
+     */
+    public static final byte ENCODE_OK = 0;
+    /**
+     * Status of tryToPackedPDCodes: the latitude is not in [-90, 90], or a coordinate is not finite.
+     */
+    public static final byte ENCODE_INVALID_COORDINATES = 1;
+    /**
+     * Status of tryToPackedPDCodes: the point is not on the rhombus, e.g., the height is out of H_RANGE,
+     * or it is exactly on the far edge of the rhombus.
+     */
+    public static final byte ENCODE_OUT_OF_RANGE = 2;
+    private static final long MAX_XY = (1L << MAX_XY_RESOLUTION) - 1;
+    private static final long MAX_Z = (1L << MAX_Z_RESOLUTION) - 1;
+    /**
+     * ISEA projection with the default orientation, shared by all calls (its orientation is never changed).
+     */
+    private static final ISEAProjection DEFAULT_PROJECTION = new ISEAProjection();
+
     /**
      * Searching a greatest common ancestor from given PD code list.
      *
@@ -28,37 +59,107 @@ public final class MortonUtils {
      * @return A greatest common ancestor of PD codes
      */
     public static String getGreatestCommonAncestor(String[] pdCodes) {
-        String result = null;
-
-        // Search for length of the shortest code in a given code list
-        int leastCodeLength = pdCodes[0].length();
-        for (String pdCode : pdCodes) {
-            if (pdCode.length() < leastCodeLength) {
-                leastCodeLength = pdCode.length();
+        // # Length of the common prefix of the first code and every other code
+        String baseMCode = pdCodes[0];
+        int commonLength = baseMCode.length();
+        for (int j = 1; j < pdCodes.length && commonLength > 0; j++) { // start from 1, for exclude baseMCode
+            String pdCode = pdCodes[j];
+            int length = Math.min(commonLength, pdCode.length());
+            int i = 0;
+            while (i < length && baseMCode.charAt(i) == pdCode.charAt(i)) {
+                i++;
             }
+            commonLength = i;
         }
 
-        boolean isSame = true;
-        for (int i = 1; i < leastCodeLength; i++) { // start from 1, for exclude face information (resolution 0)
-            String baseMCode = pdCodes[0];
-            for (int j = 1; j < pdCodes.length; j++) { // start from 1, for exclude baseMCode
-                if (!baseMCode.substring(0, i).equals(pdCodes[j].substring(0, i))) {
-                    isSame = false;
-                    break;
-                }
-            }
+        return baseMCode.substring(0, commonLength);
+    }
 
-            if (!isSame) {
-                result = baseMCode.substring(0, i - 1);
-                break;
-            }
-        }
+    /**
+     * Searching a greatest common ancestor from given packed PD codes (3-D).
+     * Only the smallest and the largest code are needed: all codes in between share their common prefix.
+     *
+     * @param packedCodes packed PD codes (3-D)
+     * @return A greatest common ancestor of packed PD codes, or NO_COMMON_ANCESTOR if the faces differ
+     * @throws IllegalArgumentException if no code is given
+     */
+    public static long getGreatestCommonAncestor3D(long[] packedCodes) {
+        return getGreatestCommonAncestor(summarize(packedCodes), true);
+    }
+
+    /**
+     * Searching a greatest common ancestor from given packed PD codes (3-D).
+     * The codes are consumed once, and in parallel if the stream is parallel.
+     *
+     * @param packedCodes packed PD codes (3-D)
+     * @return A greatest common ancestor of packed PD codes, or NO_COMMON_ANCESTOR if the faces differ
+     * @throws IllegalArgumentException if no code is given
+     */
+    public static long getGreatestCommonAncestor3D(LongStream packedCodes) {
+        return getGreatestCommonAncestor(summarize(packedCodes), true);
+    }
+
+    /**
+     * Searching a greatest common ancestor from given packed PD codes (2-D).
+     *
+     * @param packedCodes packed PD codes (2-D)
+     * @return A greatest common ancestor of packed PD codes, or NO_COMMON_ANCESTOR if the faces differ
+     * @throws IllegalArgumentException if no code is given
+     */
+    public static long getGreatestCommonAncestor2D(long[] packedCodes) {
+        return getGreatestCommonAncestor(summarize(packedCodes), false);
+    }
+
+    /**
+     * Searching a greatest common ancestor from given packed PD codes (2-D).
+     * The codes are consumed once, and in parallel if the stream is parallel.
+     *
+     * @param packedCodes packed PD codes (2-D)
+     * @return A greatest common ancestor of packed PD codes, or NO_COMMON_ANCESTOR if the faces differ
+     * @throws IllegalArgumentException if no code is given
+     */
+    public static long getGreatestCommonAncestor2D(LongStream packedCodes) {
+        return getGreatestCommonAncestor(summarize(packedCodes), false);
+    }
 
-        if (isSame) {
-            result = pdCodes[0].substring(0, leastCodeLength);
+    // summary of packed PD codes: {smallest code, largest code, lowest resolution}
+    private static long[] summarize(long[] packedCodes) {
+        long[] summary = {Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE};
+        for (long packedCode : packedCodes) {
+            accumulate(summary, packedCode);
         }
+        return summary;
+    }
+
+    private static long[] summarize(LongStream packedCodes) {
+        return packedCodes.collect(() -> new long[] {Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE},
+                MortonUtils::accumulate,
+                (a, b) -> {
+                    a[0] = Math.min(a[0], b[0]);
+                    a[1] = Math.max(a[1], b[1]);
+                    a[2] = Math.min(a[2], b[2]);
+                });
+    }
+
+    private static void accumulate(long[] summary, long packedCode) {
+        summary[0] = Math.min(summary[0], packedCode);
+        summary[1] = Math.max(summary[1], packedCode);
+        summary[2] = Math.min(summary[2], PackedPDCode.getResolution(packedCode));
+    }
+
+    private static long getGreatestCommonAncestor(long[] summary, boolean is3D) {
+        final long min = summary[0];
+        final long max = summary[1];
+        if (min > max)
+            throw new IllegalArgumentException("no packed PD code is given");
+        if (PackedPDCode.getFace(min) != PackedPDCode.getFace(max))
+            return NO_COMMON_ANCESTOR;
+
+        // # Number of common leading interleaved bits (sign and face bits excluded)
+        int commonBits = Long.numberOfLeadingZeros((min ^ max) & ~PACKED_RESOLUTION_MASK) - (Long.SIZE - PACKED_FACE_SHIFT);
+        int resolution = (int) Math.min(summary[2], is3D ? PackedPDCode.resolution3D(commonBits) : PackedPDCode.resolution2D(commonBits));
 
-        return result;
+        return is3D ? Morton3D.parent(min, resolution) : Morton2D.parent(min, resolution);
     }
 
     /**
@@ -78,6 +179,23 @@ public final class MortonUtils {
             return Morton2D.encode(faceCoordinates, resolution);
     }
 
+    /**
+     * Packed PD code (64-bit long) encoding from 2-D (or 3-D) geodetic coordinates.
+     *
+     * @param geoCoordinates    Geodetic coordinate (WGS 84 2-D (EPSG:4326) or WGS 84 3-D (EPSG:4979))
+     * @param resolution        Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @return packed PD code
+     */
+    public static long toPackedPDCode(GeoCoordinates geoCoordinates, int resolution) {
+        ISEA4DFaceCoordinates faceCoordinates = toFaceCoordinate(geoCoordinates);
+
+        assert faceCoordinates != null;
+        if(geoCoordinates.getDimension() == 3)
+            return Morton3D.encodeLong(faceCoordinates, resolution);
+        else
+            return Morton2D.encodeLong(faceCoordinates, resolution);
+    }
+
     /**
      * Face coordinate encoding from 2-D (or 3-D) geodetic coordinates.
      *
@@ -85,99 +203,353 @@ public final class MortonUtils {
      * @return ISEA4D face coordinates
      */
     public static ISEA4DFaceCoordinates toFaceCoordinate(GeoCoordinates geoCoordinates) {
-        ISEAProjection p = new ISEAProjection();
         try {
-            // # out contains coordinates from center of triangle
-            FaceCoordinates f = p.sphereToIcosahedron(geoCoordinates);
-            int face = f.getFace();
-
-            // # Find new coordinates of point from lower left/upper left origin
-            double newPointX;
-            double newPointY;
-            newPointX = f.getX() - NEW_ORIG_X;
-            if ((face >= 0 && face <= 4) || (face >= 10 && face <= 14)) {
-                newPointY = f.getY() - NEW_ORIG_Y;
+            return toFaceCoordinate(DEFAULT_PROJECTION, geoCoordinates);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null; // TODO
+    }
+
+    /**
+     * Face coordinate encoding from 2-D (or 3-D) geodetic coordinates with a given ISEA projection.
+     *
+     * @param p                 ISEA projection (e.g. with a custom orientation)
+     * @param geoCoordinates    Geodetic coordinate (WGS 84 2-D (EPSG:4326) or WGS 84 3-D (EPSG:4979))
+     * @return ISEA4D face coordinates
+     * @throws IllegalArgumentException if the projected point is not on the rhombus
+     */
+    public static ISEA4DFaceCoordinates toFaceCoordinate(ISEAProjection p, GeoCoordinates geoCoordinates) {
+        long[] faceCoordinates = new long[4];
+        toFaceCoordinate(p, geoCoordinates, faceCoordinates);
+
+        return new ISEA4DFaceCoordinates((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], faceCoordinates[3]);
+    }
+
+    /**
+     * Face coordinate encoding from 2-D (or 3-D) geodetic coordinates into a caller-owned buffer.
+     *
+     * @param p                 ISEA projection
+     * @param geoCoordinates    Geodetic coordinate (WGS 84 2-D (EPSG:4326) or WGS 84 3-D (EPSG:4979))
+     * @param faceCoordinates   Output buffer: face, x, y and z of ISEA4D face coordinates (MAX_XY_RESOLUTION)
+     * @throws IllegalArgumentException if the projected point is not on the rhombus
+     */
+    public static void toFaceCoordinate(ISEAProjection p, GeoCoordinates geoCoordinates, long[] faceCoordinates) {
+        toFaceCoordinate(p, new MutableGeoCoordinates(geoCoordinates), new MutableFaceCoordinates(), faceCoordinates);
+    }
+
+    /**
+     * Face coordinate encoding from 2-D (or 3-D) geodetic coordinates into a caller-owned buffer,
+     * using a reusable buffer for the coordinates on the icosahedron.
+     *
+     * @param p                 ISEA projection
+     * @param geoCoordinates    Geodetic coordinate (WGS 84 2-D (EPSG:4326) or WGS 84 3-D (EPSG:4979))
+     * @param f                 Buffer for the coordinates on the icosahedron
+     * @param faceCoordinates   Output buffer: face, x, y and z of ISEA4D face coordinates (MAX_XY_RESOLUTION)
+     * @throws IllegalArgumentException if the projected point is not on the rhombus
+     */
+    static void toFaceCoordinate(ISEAProjection p, MutableGeoCoordinates geoCoordinates, MutableFaceCoordinates f, long[] faceCoordinates) {
+        toFaceCoordinate(p, geoCoordinates, f, faceCoordinates, true);
+    }
+
+    /**
+     * Face coordinate encoding, reporting a failure by an exception or by the returned status.
+     * A point exactly on the far edge of the rhombus gets 2^MAX_XY_RESOLUTION (or 2^MAX_Z_RESOLUTION for Z),
+     * as it always did; the packed encoders reject it.
+     *
+     * @param p                 ISEA projection
+     * @param geoCoordinates    Geodetic coordinate (WGS 84 2-D (EPSG:4326) or WGS 84 3-D (EPSG:4979))
+     * @param f                 Buffer for the coordinates on the icosahedron
+     * @param faceCoordinates   Output buffer: face, x, y and z of ISEA4D face coordinates (MAX_XY_RESOLUTION)
+     * @param throwing          Whether a failure throws, or returns ENCODE_OUT_OF_RANGE (the buffer is then unchanged)
+     * @return ENCODE_OK, or ENCODE_OUT_OF_RANGE if the projected point is not on the rhombus
+     * @throws IllegalArgumentException if throwing, and the projected point is not on the rhombus
+     */
+    private static byte toFaceCoordinate(ISEAProjection p, MutableGeoCoordinates geoCoordinates, MutableFaceCoordinates f, long[] faceCoordinates, boolean throwing) {
+        // # out contains coordinates from center of triangle
+        if (!p.sphereToIcosahedron(geoCoordinates.getLat(), geoCoordinates.getLon(), f)) {
+            if (throwing)
+                throw new IllegalArgumentException("no face of the icosahedron contains the point: " + geoCoordinates);
+            return ENCODE_OUT_OF_RANGE;
+        }
+        int face = f.getFace();
+
+        // # Find new coordinates of point from lower left/upper left origin
+        double newPointX;
+        double newPointY;
+        newPointX = f.getX() - NEW_ORIG_X;
+        if (p.faceOrientation(face) > 0) {
+            newPointY = f.getY() - NEW_ORIG_Y;
+        } else {
+            newPointY = f.getY() + NEW_ORIG_Y;
+        }
+
+        // # Rotate the axes, round down to nearest integer since addressing begins at 0
+        // # Scale coordinates of all dimensions to match resolution of DGGS
+        double origX = ((newPointX - ((1 / (Math.sqrt(3))) * newPointY)) / (NEW_ORIG_X * (-2))) * TOTAL_RANGE;
+        double origY = ((newPointX + ((1 / (Math.sqrt(3))) * newPointY)) / (NEW_ORIG_X * (-2))) * TOTAL_RANGE;
+        double origZ = 0;
+        if(geoCoordinates.getDimension() == 3)
+            origZ = ((H_RANGE + geoCoordinates.getHeight()) / (H_RANGE * 2.0d)) * TOTAL_RANGE_Z;
+        if(!(origX >= 0 && origY >= 0 && origZ >= 0 && origX <= TOTAL_RANGE && origY <= TOTAL_RANGE && origZ <= TOTAL_RANGE_Z)) {
+            if (throwing)
+                throw new IllegalArgumentException("new Point X (or Y) is not on the rhombus: X = " + origX + " || Y = " + origY  + " || Z = " + origZ);
+            return ENCODE_OUT_OF_RANGE;
+        }
+
+        // # Convert triangle face number to rhombus face number
+        face = TRIANGLE_TO_RHOMBUS[face];
+
+        faceCoordinates[0] = face;
+        faceCoordinates[1] = (long) origX;
+        faceCoordinates[2] = (long) origY;
+        faceCoordinates[3] = (long) origZ;
+        return ENCODE_OK;
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding from columns of geodetic coordinates, without exceptions for invalid points.
+     * A point that cannot be encoded gets INVALID_PACKED_PD_CODE and a non-zero status, and the encoding continues.
+     * Only the number of failures is returned: the status array already tells their causes apart, and a single count
+     * keeps the parallel variant a plain sum over the blocks.
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes
+     * @param status        Output array of status: ENCODE_OK, ENCODE_INVALID_COORDINATES or ENCODE_OUT_OF_RANGE
+     * @return Number of points that could not be encoded
+     * @throws IllegalArgumentException if the resolution is out of range (checked once, before encoding)
+     */
+    public static int tryToPackedPDCodes(double[] lat, double[] lon, double[] height, int resolution, long[] packedCodes, byte[] status) {
+        return tryToPackedPDCodes(lat, lon, height, resolution, packedCodes, status, 0, lat.length);
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding from columns of geodetic coordinates without exceptions for invalid points,
+     * for the index range [from, to).
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes
+     * @param status        Output array of status: ENCODE_OK, ENCODE_INVALID_COORDINATES or ENCODE_OUT_OF_RANGE
+     * @param from          First index (inclusive)
+     * @param to            Last index (exclusive)
+     * @return Number of points that could not be encoded
+     * @throws IllegalArgumentException if the resolution is out of range (checked once, before encoding)
+     */
+    public static int tryToPackedPDCodes(double[] lat, double[] lon, double[] height, int resolution, long[] packedCodes, byte[] status, int from, int to) {
+        if (resolution < 0 || resolution > (height != null ? MAX_PACKED_3D_RESOLUTION : MAX_PACKED_2D_RESOLUTION))
+            throw new IllegalArgumentException("resolution is out of range for packed PD code: " + resolution);
+
+        ISEAProjection p = DEFAULT_PROJECTION;
+        MutableGeoCoordinates geoCoordinates = new MutableGeoCoordinates();
+        MutableFaceCoordinates f = new MutableFaceCoordinates();
+        long[] faceCoordinates = new long[4];
+        int failures = 0;
+        for (int i = from; i < to; i++) {
+            byte result;
+            if (!(lat[i] >= -90 && lat[i] <= 90) || !Double.isFinite(lon[i]) || (height != null && !Double.isFinite(height[i]))) {
+                result = ENCODE_INVALID_COORDINATES;
+            } else if (height != null) {
+                result = toFaceCoordinate(p, geoCoordinates.set(lat[i], lon[i], height[i]), f, faceCoordinates, false);
+            } else {
+                result = toFaceCoordinate(p, geoCoordinates.set(lat[i], lon[i]), f, faceCoordinates, false);
+            }
+            // # A point on the far edge is out of range of the packed PD code
+            if (result == ENCODE_OK && (faceCoordinates[1] > MAX_XY || faceCoordinates[2] > MAX_XY || faceCoordinates[3] > MAX_Z))
+                result = ENCODE_OUT_OF_RANGE;
+
+            if (result != ENCODE_OK) {
+                packedCodes[i] = INVALID_PACKED_PD_CODE;
+                failures++;
+            } else if (height != null) {
+                packedCodes[i] = Morton3D.encodeLong((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], faceCoordinates[3], resolution);
             } else {
-                newPointY = f.getY() + NEW_ORIG_Y;
+                packedCodes[i] = Morton2D.encodeLong((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], resolution);
             }
+            status[i] = result;
+        }
 
-            // # Rotate the axes, round down to nearest integer since addressing begins at 0
-            // # Scale coordinates of all dimensions to match resolution of DGGS
-            double origX = ((newPointX - ((1 / (Math.sqrt(3))) * newPointY)) / (NEW_ORIG_X * (-2))) * TOTAL_RANGE;
-            double origY = ((newPointX + ((1 / (Math.sqrt(3))) * newPointY)) / (NEW_ORIG_X * (-2))) * TOTAL_RANGE;
-            double origZ = 0;
-            if(geoCoordinates.getDimension() == 3)
-                origZ = ((H_RANGE + geoCoordinates.getHeight()) / (H_RANGE * 2.0d)) * TOTAL_RANGE_Z;
-            if(origX < 0 || origY < 0 || origZ < 0 || origX > TOTAL_RANGE || origY > TOTAL_RANGE || origZ > TOTAL_RANGE_Z)
-                throw new IllegalArgumentException("new Point X (or Y) is not on the rhombus: X = " + origX + " || Y = " + origY  + " || Z = " + origZ);
+        return failures;
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding from columns of geodetic coordinates without exceptions for invalid points,
+     * using the common ForkJoinPool (see toPackedPDCodesParallel).
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes
+     * @param status        Output array of status: ENCODE_OK, ENCODE_INVALID_COORDINATES or ENCODE_OUT_OF_RANGE
+     * @return Number of points that could not be encoded
+     * @throws IllegalArgumentException if the resolution is out of range (checked once, before encoding)
+     */
+    public static int tryToPackedPDCodesParallel(double[] lat, double[] lon, double[] height, int resolution, long[] packedCodes, byte[] status) {
+        final int size = lat.length;
+        final int blockCount = (size + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+        return IntStream.range(0, blockCount).parallel().map(block ->
+                tryToPackedPDCodes(lat, lon, height, resolution, packedCodes, status,
+                        block * BATCH_BLOCK_SIZE, Math.min(size, (block + 1) * BATCH_BLOCK_SIZE))).sum();
+    }
 
-            long intX = Double.valueOf(origX).longValue();
-            long intY = Double.valueOf(origY).longValue();
-            long intZ = Double.valueOf(origZ).longValue();
-
-            // # Convert triangle face number to rhombus face number
-            if (face == 0 || face == 5) {
-                face = 0;
-            } else if (face == 10 || face == 15) {
-                face = 1;
-            } else if (face == 1 || face == 6) {
-                face = 2;
-            } else if (face == 11 || face == 16) {
-                face = 3;
-            } else if (face == 2 || face == 7) {
-                face = 4;
-            } else if (face == 12 || face == 17) {
-                face = 5;
-            } else if (face == 3 || face == 8) {
-                face = 6;
-            } else if (face == 13 || face == 18) {
-                face = 7;
-            } else if (face == 4 || face == 9) {
-                face = 8;
+    /**
+     * Packed PD code (64-bit long) encoding from columns of geodetic coordinates.
+     * The projection and a buffer are shared by all points, and the codes are written to a caller-supplied array.
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes
+     * @throws IllegalArgumentException if a point is not on the rhombus
+     */
+    public static void toPackedPDCodes(double[] lat, double[] lon, double[] height, int resolution, long[] packedCodes) {
+        toPackedPDCodes(lat, lon, height, resolution, packedCodes, 0, lat.length);
+    }
+
+    /**
+     * Packed PD code (64-bit long) encoding from columns of geodetic coordinates, for the index range [from, to).
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes
+     * @param from          First index (inclusive)
+     * @param to            Last index (exclusive)
+     * @throws IllegalArgumentException if a point is not on the rhombus
+     */
+    public static void toPackedPDCodes(double[] lat, double[] lon, double[] height, int resolution, long[] packedCodes, int from, int to) {
+        ISEAProjection p = DEFAULT_PROJECTION;
+        MutableGeoCoordinates geoCoordinates = new MutableGeoCoordinates();
+        MutableFaceCoordinates f = new MutableFaceCoordinates();
+        long[] faceCoordinates = new long[4];
+        for (int i = from; i < to; i++) {
+            if (height != null) {
+                toFaceCoordinate(p, geoCoordinates.set(lat[i], lon[i], height[i]), f, faceCoordinates);
+                packedCodes[i] = Morton3D.encodeLong((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], faceCoordinates[3], resolution);
             } else {
-                face = 9;
+                toFaceCoordinate(p, geoCoordinates.set(lat[i], lon[i]), f, faceCoordinates);
+                packedCodes[i] = Morton2D.encodeLong((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], resolution);
             }
+        }
+    }
 
-            return new ISEA4DFaceCoordinates(face, intX, intY, intZ);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Packed PD code (64-bit long) encoding from buffers of geodetic coordinates.
+     * The buffers are read from their current positions (absolute get), and their positions are not changed.
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes (length is the number of points)
+     * @throws IllegalArgumentException if a point is not on the rhombus
+     */
+    public static void toPackedPDCodes(DoubleBuffer lat, DoubleBuffer lon, DoubleBuffer height, int resolution, long[] packedCodes) {
+        ISEAProjection p = DEFAULT_PROJECTION;
+        MutableGeoCoordinates geoCoordinates = new MutableGeoCoordinates();
+        MutableFaceCoordinates f = new MutableFaceCoordinates();
+        long[] faceCoordinates = new long[4];
+        for (int i = 0; i < packedCodes.length; i++) {
+            if (height != null) {
+                toFaceCoordinate(p, geoCoordinates.set(lat.get(lat.position() + i), lon.get(lon.position() + i), height.get(height.position() + i)), f, faceCoordinates);
+                packedCodes[i] = Morton3D.encodeLong((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], faceCoordinates[3], resolution);
+            } else {
+                toFaceCoordinate(p, geoCoordinates.set(lat.get(lat.position() + i), lon.get(lon.position() + i)), f, faceCoordinates);
+                packedCodes[i] = Morton2D.encodeLong((int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], resolution);
+            }
         }
+    }
 
-        return null; // TODO
+    /**
+     * Packed PD code (64-bit long) encoding from columns of geodetic coordinates, using the common ForkJoinPool.
+     * The points are split into blocks of BATCH_BLOCK_SIZE, and each block is encoded by one worker.
+     *
+     * @param lat           Latitudes (WGS 84, UoM: degree)
+     * @param lon           Longitudes (WGS 84, UoM: degree)
+     * @param height        Ellipsoidal heights (UoM: meter), or null for 2-D PD codes
+     * @param resolution    Target resolution for PD code encoding (up to MAX_PACKED_3D_RESOLUTION or MAX_PACKED_2D_RESOLUTION)
+     * @param packedCodes   Output array of packed PD codes
+     * @throws IllegalArgumentException if a point is not on the rhombus
+     */
+    public static void toPackedPDCodesParallel(double[] lat, double[] lon, double[] height, int resolution, long[] packedCodes) {
+        final int size = lat.length;
+        final int blockCount = (size + BATCH_BLOCK_SIZE - 1) / BATCH_BLOCK_SIZE;
+        IntStream.range(0, blockCount).parallel().forEach(block ->
+                toPackedPDCodes(lat, lon, height, resolution, packedCodes,
+                        block * BATCH_BLOCK_SIZE, Math.min(size, (block + 1) * BATCH_BLOCK_SIZE)));
     }
 
     /**
      * Get face coordinates according to a given resolution.
-     * This function will work when target resolution is less than given ISEA4D face coordinates' resolution.
+     * Coarsening drops the lower bits of X, Y and Z (the cell containing the coordinates), and refining appends zero bits
+     * (the first descendant cell, i.e., the lower corner). Z has (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION) resolutions less than X and Y.
      *
      * @param faceCoordinates   Given ISEA4D face coordinates
      * @param resolution        Target resolution
      * @return ISEA4D face coordinates
+     * @throws IllegalArgumentException if the target resolution is out of range
      */
     public static ISEA4DFaceCoordinates toFaceCoordinate(ISEA4DFaceCoordinates faceCoordinates, int resolution) {
         if(faceCoordinates.getResolution() != resolution) {
-            final double TOTAL_RANGE_Z_BY_RES = (resolution < (DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION) ? 0 : Math.pow(2, resolution - (DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION)));
-            int face = faceCoordinates.getFace();
-            long x = faceCoordinates.getX();
-            long y = faceCoordinates.getY();
-            long z = faceCoordinates.getZ();
-
-            if(faceCoordinates.getResolution() > resolution) {
-                x = (long) (faceCoordinates.getX() / faceCoordinates.getMaxX() * Math.pow(2, resolution));
-                y = (long) (faceCoordinates.getY() / faceCoordinates.getMaxY() * Math.pow(2, resolution));
-                z = (long) (faceCoordinates.getZ() / faceCoordinates.getMaxZ() * TOTAL_RANGE_Z_BY_RES);
-            }
-            else {
-                // TODO
-            }
+            checkResolution(resolution);
+            int from = faceCoordinates.getResolution();
+            long x = changeResolution(faceCoordinates.getX(), from, resolution);
+            long y = changeResolution(faceCoordinates.getY(), from, resolution);
+            long z = changeResolution(faceCoordinates.getZ(), toZResolution(from), toZResolution(resolution));
 
-            return new ISEA4DFaceCoordinates(face, x, y, z, resolution);
+            return new ISEA4DFaceCoordinates(faceCoordinates.getFace(), x, y, z, resolution);
         }
         else {
             return faceCoordinates;
         }
     }
 
+    /**
+     * Get face coordinates according to a given resolution, for columns of face coordinates.
+     * The arrays are overwritten with the face coordinates of the target resolution.
+     *
+     * @param x                 X values of ISEA4D face coordinates
+     * @param y                 Y values of ISEA4D face coordinates
+     * @param z                 Z values of ISEA4D face coordinates, or null for 2-D face coordinates
+     * @param resolution        Resolution of given face coordinates
+     * @param targetResolution  Target resolution
+     * @throws IllegalArgumentException if a resolution is out of range
+     */
+    public static void toFaceCoordinates(long[] x, long[] y, long[] z, int resolution, int targetResolution) {
+        checkResolution(resolution);
+        checkResolution(targetResolution);
+        final int zResolution = toZResolution(resolution);
+        final int zTargetResolution = toZResolution(targetResolution);
+        for (int i = 0; i < x.length; i++) {
+            x[i] = changeResolution(x[i], resolution, targetResolution);
+            y[i] = changeResolution(y[i], resolution, targetResolution);
+            if (z != null)
+                z[i] = changeResolution(z[i], zResolution, zTargetResolution);
+        }
+    }
+
+    private static long changeResolution(long value, int resolution, int targetResolution) {
+        return targetResolution < resolution ? value >>> (resolution - targetResolution) : value << (targetResolution - resolution);
+    }
+
+    private static int toZResolution(int resolution) {
+        return Math.max(0, resolution - (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION));
+    }
+
+    private static void checkResolution(int resolution) {
+        if (resolution < 0 || resolution > MAX_XY_RESOLUTION)
+            throw new IllegalArgumentException("resolution is out of range: " + resolution);
+    }
+
     /**
      * PD code (Point cloud DGGS code, DGGS Morton for point cloud) decoding to 3-dimensional coordinates (WGS 84 3D, EPSG:4979)
      *
@@ -212,69 +584,91 @@ public final class MortonUtils {
      * @return 3-dimensional geodetic coordinate (WGS 84 3D, EPSG:4979)
      */
     public static GeoCoordinates toGeoCoordinate(ISEA4DFaceCoordinates faceCoordinates) {
-        double x = faceCoordinates.getX();
-        double y = faceCoordinates.getY();
-        double z = faceCoordinates.getZ();
-        int face = faceCoordinates.getFace();
+        return toGeoCoordinate(DEFAULT_PROJECTION, faceCoordinates);
+    }
+
+    /**
+     * ISEA4D face coordinates decoding to 3-dimensional coordinates (WGS 84 3D, EPSG:4979) with a given ISEA projection.
+     * This function uses a given ISEA4D face coordinates' resolution.
+     *
+     * @param p                 ISEA projection (e.g. with a custom orientation)
+     * @param faceCoordinates   ISEA4D face coordinates
+     * @return 3-dimensional geodetic coordinate (WGS 84 3D, EPSG:4979)
+     */
+    public static GeoCoordinates toGeoCoordinate(ISEAProjection p, ISEA4DFaceCoordinates faceCoordinates) {
+        double[] geoCoordinates = new double[3];
+        toGeoCoordinate(p, faceCoordinates.getFace(), faceCoordinates.getX(), faceCoordinates.getY(), faceCoordinates.getZ(),
+                faceCoordinates.getResolution(), geoCoordinates);
+
+        return new GeoCoordinates(geoCoordinates[0], geoCoordinates[1], geoCoordinates[2]);
+    }
+
+    /**
+     * Packed PD code decoding to 3-dimensional coordinates (WGS 84 3D, EPSG:4979), into a caller-owned buffer.
+     *
+     * @param packedCode        packed PD code (3-D)
+     * @param geoCoordinates    Output buffer: latitude, longitude and height
+     */
+    public static void toGeoCoordinate(long packedCode, double[] geoCoordinates) {
+        long[] faceCoordinates = new long[4];
+        Morton3D.decodeLong(packedCode, faceCoordinates);
+        toGeoCoordinate(DEFAULT_PROJECTION, (int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], faceCoordinates[3],
+                PackedPDCode.getResolution(packedCode), geoCoordinates);
+    }
+
+    /**
+     * Packed PD codes decoding to 3-dimensional coordinates (WGS 84 3D, EPSG:4979), into caller-owned parallel arrays.
+     * The projection and a buffer are shared by all codes.
+     *
+     * @param packedCodes   packed PD codes (3-D)
+     * @param lat           Output array of latitudes (UoM: degree)
+     * @param lon           Output array of longitudes (UoM: degree)
+     * @param height        Output array of ellipsoidal heights (UoM: meter)
+     */
+    public static void toGeoCoordinates(long[] packedCodes, double[] lat, double[] lon, double[] height) {
+        ISEAProjection p = DEFAULT_PROJECTION;
+        MutableGeoCoordinates g = new MutableGeoCoordinates();
+        long[] faceCoordinates = new long[4];
+        double[] geoCoordinates = new double[3];
+        for (int i = 0; i < packedCodes.length; i++) {
+            Morton3D.decodeLong(packedCodes[i], faceCoordinates);
+            toGeoCoordinate(p, (int) faceCoordinates[0], faceCoordinates[1], faceCoordinates[2], faceCoordinates[3],
+                    PackedPDCode.getResolution(packedCodes[i]), g, geoCoordinates);
+            lat[i] = geoCoordinates[0];
+            lon[i] = geoCoordinates[1];
+            height[i] = geoCoordinates[2];
+        }
+    }
+
+    /**
+     * ISEA4D face coordinates decoding to 3-dimensional coordinates (WGS 84 3D, EPSG:4979), into a caller-owned buffer.
+     *
+     * @param p                 ISEA projection
+     * @param face              Index of rhombuses (= diamond) from 0 to 9
+     * @param x                 X value of ISEA4D face coordinates
+     * @param y                 Y value of ISEA4D face coordinates
+     * @param z                 Z value of ISEA4D face coordinates
+     * @param resolution        Resolution of ISEA4D face coordinates
+     * @param geoCoordinates    Output buffer: latitude, longitude and height
+     */
+    public static void toGeoCoordinate(ISEAProjection p, int face, long x, long y, long z, int resolution, double[] geoCoordinates) {
+        toGeoCoordinate(p, face, x, y, z, resolution, new MutableGeoCoordinates(), geoCoordinates);
+    }
+
+    private static void toGeoCoordinate(ISEAProjection p, int face, long x, long y, long z, int resolution, MutableGeoCoordinates g, double[] geoCoordinates) {
+        final long maxXY = MAX_XY_AT_RESOLUTION[resolution];
 
         // # Convert h/Z to height above/below ellipsoid
-        double height = faceCoordinates.getMaxZ() <= 1 ? 0 : (z * 2.0d * H_RANGE) / faceCoordinates.getMaxZ() - H_RANGE;
+        double height = MAX_Z_AT_RESOLUTION[resolution] <= 1 ? 0 : (z * 2.0d * H_RANGE) / MAX_Z_AT_RESOLUTION[resolution] - H_RANGE;
         // # Scale coordinates to scale of Cartesian system
-        double scaledX = (x / faceCoordinates.getMaxX()) * (NEW_ORIG_X * -2);
-        double scaledY = (y / faceCoordinates.getMaxY()) * (NEW_ORIG_X * -2);
-        double[] b = {scaledX, scaledY};
-        RealMatrix rmb = MatrixUtils.createColumnRealMatrix(b); // MatrixUtils.createColumnRealMatrix -- a columnData x 1 FieldMatrix
-        RealMatrix rmx = MATRIX_A_INVERSE.multiply(rmb); // MatrixUtils.createRowRealMatrix -- a 1 x rowData.length RealMatrix
-        double xCoords = rmx.getData()[0][0];
-        double yCoords = rmx.getData()[1][0];
+        double scaledX = ((double) x / maxXY) * RHOMBUS_EDGE;
+        double scaledY = ((double) y / maxXY) * RHOMBUS_EDGE;
+        double xCoords = SkewTransform.toOrthogonalX(scaledX, scaledY);
+        double yCoords = SkewTransform.toOrthogonalY(scaledX, scaledY);
 
         // # Get triangle face from rhombus face based on values of y.
         // # If y is negative, triangles will be downward oriented
-        if (yCoords >= 0) {
-            if (face == 0) {
-                face = 0;
-            } else if (face == 1) {
-                face = 10;
-            } else if (face == 2) {
-                face = 1;
-            } else if (face == 3) {
-                face = 11;
-            } else if (face == 4) {
-                face = 2;
-            } else if (face == 5) {
-                face = 12;
-            } else if (face == 6) {
-                face = 3;
-            } else if (face == 7) {
-                face = 13;
-            } else if (face == 8) {
-                face = 4;
-            } else if (face == 9) {
-                face = 14;
-            }
-        } else {
-            if (face == 0) {
-                face = 5;
-            } else if (face == 1) {
-                face = 15;
-            } else if (face == 2) {
-                face = 6;
-            } else if (face == 3) {
-                face = 16;
-            } else if (face == 4) {
-                face = 7;
-            } else if (face == 5) {
-                face = 17;
-            } else if (face == 6) {
-                face = 8;
-            } else if (face == 7) {
-                face = 18;
-            } else if (face == 8) {
-                face = 9;
-            } else if (face == 9) {
-                face = 19;
-            }
-        }
+        face = yCoords >= 0 ? RHOMBUS_TO_UPPER_TRIANGLE[face] : RHOMBUS_TO_LOWER_TRIANGLE[face];
 
         // # Translate coordinates to center (origin) of icosahedron triangle,
         // # taking into account triangle orientation
@@ -282,23 +676,16 @@ public final class MortonUtils {
         double yOrigin;
 
         xOrigin = xCoords + NEW_ORIG_X;
-        if ((face >= 0 && face <= 4) || (face >= 10 && face <= 14)) {
+        if (p.faceOrientation(face) > 0) {
             yOrigin = yCoords + NEW_ORIG_Y;
         } else {
             yOrigin = yCoords - NEW_ORIG_Y;
         }
 
-        try {
-            ISEAProjection p = new ISEAProjection();
-            p.setOrientation(0,0);
-            GeoCoordinates geodeticCoord = p.icosahedronToSphere(new FaceCoordinates(face, xOrigin, yOrigin));
-
-            return new GeoCoordinates(geodeticCoord.getLat(), geodeticCoord.getLon(), height);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        return null; // TODO
+        p.icosahedronToSphere(face, xOrigin, yOrigin, g);
+        geoCoordinates[0] = g.getLat();
+        geoCoordinates[1] = g.getLon();
+        geoCoordinates[2] = height;
     }
 
     /**
@@ -0,0 +1,125 @@
+package jp.go.aist.dggs.utils;
+
+import static jp.go.aist.dggs.common.DGGS.*;
+
+/**
+ * Bit layout of the packed PD code (a 64-bit long instead of a String).
+ *
+ * The packed code keeps, from the most significant bit, a zero sign bit, the rhombus face (4 bits),
+ * the interleaved Morton bits left-aligned in a 54-bit field, and the resolution (5 bits).
+ * Packed codes of the same dimension sort in the same order as their String form, and the code of a cell
+ * precedes the codes of all its descendants.
+ *
+ * A 2-D level uses 2 bits (y, x). A 3-D level uses 3 bits (z, y, x), except for the first
+ * (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION) levels where Z is always 0 and only 2 bits (y, x) are stored.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class PackedPDCode {
+    private static final int Z_OFFSET_RESOLUTION = MAX_XY_RESOLUTION - MAX_Z_RESOLUTION;
+
+    private PackedPDCode() {
+    }
+
+    /**
+     * Build a packed PD code from its fields.
+     *
+     * @param face          Index of rhombuses (= diamond) from 0 to 9
+     * @param mortonBits    Interleaved bits, right-aligned
+     * @param bitCount      Number of valid interleaved bits
+     * @param resolution    Resolution of the code
+     * @return packed PD code
+     */
+    public static long pack(int face, long mortonBits, int bitCount, int resolution) {
+        return ((long) face << PACKED_FACE_SHIFT)
+                | (bitCount == 0 ? 0 : mortonBits << (PACKED_FACE_SHIFT - bitCount))
+                | resolution;
+    }
+
+    /**
+     * @param packedCode packed PD code
+     * @return Index of rhombuses (= diamond) from 0 to 9
+     */
+    public static int getFace(long packedCode) {
+        return (int) ((packedCode >>> PACKED_FACE_SHIFT) & PACKED_FACE_MASK);
+    }
+
+    /**
+     * @param packedCode packed PD code
+     * @return Resolution of the packed PD code
+     */
+    public static int getResolution(long packedCode) {
+        return (int) (packedCode & PACKED_RESOLUTION_MASK);
+    }
+
+    /**
+     * Interleaved bits of a packed PD code, right-aligned.
+     *
+     * @param packedCode    packed PD code
+     * @param bitCount      Number of valid interleaved bits (see {@link #bitCount2D(int)} and {@link #bitCount3D(int)})
+     * @return interleaved bits
+     */
+    public static long getMortonBits(long packedCode, int bitCount) {
+        if (bitCount == 0)
+            return 0;
+        return (packedCode >>> (PACKED_FACE_SHIFT - bitCount)) & ((1L << bitCount) - 1);
+    }
+
+    /**
+     * Packed PD code of the ancestor cell, keeping the face and the first bitCount interleaved bits.
+     *
+     * @param packedCode    packed PD code
+     * @param bitCount      Number of interleaved bits of the ancestor
+     * @param resolution    Resolution of the ancestor
+     * @return packed PD code of the ancestor
+     */
+    public static long truncate(long packedCode, int bitCount, int resolution) {
+        return (packedCode & ~((1L << (PACKED_FACE_SHIFT - bitCount)) - 1)) | resolution;
+    }
+
+    /**
+     * Upper bound of the packed PD codes of all descendants of a cell (at any resolution).
+     * The cell and its descendants are exactly the codes in [packedCode, lastDescendant(packedCode, bitCount)].
+     *
+     * @param packedCode    packed PD code
+     * @param bitCount      Number of interleaved bits of the packed PD code
+     * @return largest possible packed PD code of a descendant
+     */
+    public static long lastDescendant(long packedCode, int bitCount) {
+        return packedCode | ((1L << (PACKED_FACE_SHIFT - bitCount)) - 1);
+    }
+
+    /**
+     * @param resolution Resolution of the packed PD code
+     * @return Number of interleaved bits of a 2-D packed PD code
+     */
+    public static int bitCount2D(int resolution) {
+        return resolution * 2;
+    }
+
+    /**
+     * @param resolution Resolution of the packed PD code
+     * @return Number of interleaved bits of a 3-D packed PD code
+     */
+    public static int bitCount3D(int resolution) {
+        return resolution <= Z_OFFSET_RESOLUTION ?
+                resolution * 2 : Z_OFFSET_RESOLUTION * 2 + (resolution - Z_OFFSET_RESOLUTION) * 3;
+    }
+
+    /**
+     * @param bitCount Number of interleaved bits
+     * @return Highest resolution of a 2-D packed PD code whose interleaved bits fit in bitCount bits
+     */
+    public static int resolution2D(int bitCount) {
+        return bitCount / 2;
+    }
+
+    /**
+     * @param bitCount Number of interleaved bits
+     * @return Highest resolution of a 3-D packed PD code whose interleaved bits fit in bitCount bits
+     */
+    public static int resolution3D(int bitCount) {
+        return bitCount <= Z_OFFSET_RESOLUTION * 2 ?
+                bitCount / 2 : Z_OFFSET_RESOLUTION + (bitCount - Z_OFFSET_RESOLUTION * 2) / 3;
+    }
+}
@@ -0,0 +1,61 @@
+package jp.go.aist.dggs.utils;
+
+import static jp.go.aist.dggs.common.DGGS.MATRIX_A;
+import static jp.go.aist.dggs.common.DGGS.MATRIX_A_INVERSE;
+
+/**
+ * Skew and unskew transform between the orthogonal (Cartesian) coordinates of a rhombus and the ISEA4D face coordinates.
+ * Each method gives the same value as multiplying jp.go.aist.dggs.common.DGGS.MATRIX_A (or MATRIX_A_INVERSE)
+ * with a column vector, but on primitives and without allocating matrices.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public final class SkewTransform {
+    private static final double A_00 = MATRIX_A.getEntry(0, 0);
+    private static final double A_01 = MATRIX_A.getEntry(0, 1);
+    private static final double A_10 = MATRIX_A.getEntry(1, 0);
+    private static final double A_11 = MATRIX_A.getEntry(1, 1);
+    private static final double A_INVERSE_00 = MATRIX_A_INVERSE.getEntry(0, 0);
+    private static final double A_INVERSE_01 = MATRIX_A_INVERSE.getEntry(0, 1);
+    private static final double A_INVERSE_10 = MATRIX_A_INVERSE.getEntry(1, 0);
+    private static final double A_INVERSE_11 = MATRIX_A_INVERSE.getEntry(1, 1);
+
+    private SkewTransform() {
+    }
+
+    /**
+     * @param x orthogonal X
+     * @param y orthogonal Y
+     * @return skewed (ISEA4D) X, i.e., the first row of MATRIX_A * (x, y)
+     */
+    public static double toSkewedX(double x, double y) {
+        return A_00 * x + A_01 * y;
+    }
+
+    /**
+     * @param x orthogonal X
+     * @param y orthogonal Y
+     * @return skewed (ISEA4D) Y, i.e., the second row of MATRIX_A * (x, y)
+     */
+    public static double toSkewedY(double x, double y) {
+        return A_10 * x + A_11 * y;
+    }
+
+    /**
+     * @param x skewed (ISEA4D) X
+     * @param y skewed (ISEA4D) Y
+     * @return orthogonal X, i.e., the first row of MATRIX_A_INVERSE * (x, y)
+     */
+    public static double toOrthogonalX(double x, double y) {
+        return A_INVERSE_00 * x + A_INVERSE_01 * y;
+    }
+
+    /**
+     * @param x skewed (ISEA4D) X
+     * @param y skewed (ISEA4D) Y
+     * @return orthogonal Y, i.e., the second row of MATRIX_A_INVERSE * (x, y)
+     */
+    public static double toOrthogonalY(double x, double y) {
+        return A_INVERSE_10 * x + A_INVERSE_11 * y;
+    }
+}
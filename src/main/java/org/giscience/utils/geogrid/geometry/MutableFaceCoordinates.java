@@ -0,0 +1,63 @@
+package org.giscience.utils.geogrid.geometry;
+
+/**
+ * Cartesian Coordinates of a location on a face of a platonic solid, stored in primitive fields.
+ *
+ * Unlike {@link FaceCoordinates}, the coordinates can be changed, such that one instance can be reused for many
+ * locations, e.g., as the result buffer of a projection.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public class MutableFaceCoordinates {
+    private int _face;
+    private double _x;
+    private double _y;
+
+    public MutableFaceCoordinates() {
+    }
+
+    public MutableFaceCoordinates(int face, double x, double y) {
+        this.set(face, x, y);
+    }
+
+    public MutableFaceCoordinates(FaceCoordinates c) {
+        this.set(c.getFace(), c.getX(), c.getY());
+    }
+
+    /**
+     * @param face face index
+     * @param x    x on the face
+     * @param y    y on the face
+     * @return this
+     */
+    public MutableFaceCoordinates set(int face, double x, double y) {
+        this._face = face;
+        this._x = x;
+        this._y = y;
+        return this;
+    }
+
+    public int getFace() {
+        return this._face;
+    }
+
+    public double getX() {
+        return this._x;
+    }
+
+    public double getY() {
+        return this._y;
+    }
+
+    /**
+     * @return immutable copy of the coordinates
+     */
+    public FaceCoordinates toFaceCoordinates() {
+        return new FaceCoordinates(this._face, this._x, this._y);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("face %d x %f y %f", this._face, this._x, this._y);
+    }
+}
@@ -0,0 +1,129 @@
+package org.giscience.utils.geogrid.geometry;
+
+/**
+ * Geographic coordinates of a location on Earth, stored in primitive fields.
+ *
+ * Unlike {@link GeoCoordinates}, the coordinates can be changed, such that one instance can be reused for many
+ * locations, e.g., as the result buffer of a projection.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ */
+public class MutableGeoCoordinates {
+    private double _lat;
+    private double _lon;
+    private double _height;
+    private short _dimension = 2;
+
+    public MutableGeoCoordinates() {
+    }
+
+    /**
+     * @param latitude  latitude from WGS84 (UoM: degree)
+     * @param longitude longitude from WGS84 (UoM: degree)
+     */
+    public MutableGeoCoordinates(double latitude, double longitude) throws IllegalArgumentException {
+        this.set(latitude, longitude);
+    }
+
+    /**
+     * @param latitude  latitude from WGS84 (UoM: degree)
+     * @param longitude longitude from WGS84 (UoM: degree)
+     * @param height    ellipsoidal height (UoM: meter)
+     */
+    public MutableGeoCoordinates(double latitude, double longitude, double height) throws IllegalArgumentException {
+        this.set(latitude, longitude, height);
+    }
+
+    /**
+     * @param c geographic coordinates
+     */
+    public MutableGeoCoordinates(GeoCoordinates c) throws IllegalArgumentException {
+        this.set(c);
+    }
+
+    /**
+     * Sets 2-D coordinates. The longitude is normalized to [-180, 180] like in {@link GeoCoordinates}.
+     *
+     * @param latitude  latitude from WGS84 (UoM: degree)
+     * @param longitude longitude from WGS84 (UoM: degree)
+     * @return this
+     */
+    public MutableGeoCoordinates set(double latitude, double longitude) throws IllegalArgumentException {
+        this._set(latitude, longitude);
+        this._height = 0;
+        this._dimension = 2;
+        return this;
+    }
+
+    /**
+     * Sets 3-D coordinates. The longitude is normalized to [-180, 180] like in {@link GeoCoordinates}.
+     *
+     * @param latitude  latitude from WGS84 (UoM: degree)
+     * @param longitude longitude from WGS84 (UoM: degree)
+     * @param height    ellipsoidal height (UoM: meter)
+     * @return this
+     */
+    public MutableGeoCoordinates set(double latitude, double longitude, double height) throws IllegalArgumentException {
+        this._set(latitude, longitude);
+        this._height = height;
+        this._dimension = 3;
+        return this;
+    }
+
+    /**
+     * @param c geographic coordinates
+     * @return this
+     */
+    public MutableGeoCoordinates set(GeoCoordinates c) throws IllegalArgumentException {
+        if (c.getHeight() != null) return this.set(c.getLat(), c.getLon(), c.getHeight());
+        return this.set(c.getLat(), c.getLon());
+    }
+
+    private void _set(double latitude, double longitude) throws IllegalArgumentException {
+        if (latitude < -90 || latitude > 90) throw new IllegalArgumentException("invalid latitude");
+        if (longitude < -180 || longitude > 180) {
+            longitude %= 360;
+            if (longitude > 180) longitude -= 360;
+            else if (longitude < -180) longitude += 360;
+        }
+        this._lat = latitude;
+        this._lon = longitude;
+    }
+
+    public double getLat() {
+        return this._lat;
+    }
+
+    public double getLon() {
+        return this._lon;
+    }
+
+    /**
+     * @return ellipsoidal height (UoM: meter), or 0 for 2-D coordinates
+     */
+    public double getHeight() {
+        return this._height;
+    }
+
+    public short getDimension() {
+        return this._dimension;
+    }
+
+    /**
+     * @return immutable copy of the coordinates
+     */
+    public GeoCoordinates toGeoCoordinates() {
+        if (this._dimension == 3)
+            return new GeoCoordinates(this._lat, this._lon, this._height);
+        else
+            return new GeoCoordinates(this._lat, this._lon);
+    }
+
+    @Override
+    public String toString() {
+        if (this._dimension == 3)
+            return String.format("latitude %f longitude %f height %f", this._lat, this._lon, this._height);
+        else
+            return String.format("latitude %f longitude %f", this._lat, this._lon);
+    }
+}
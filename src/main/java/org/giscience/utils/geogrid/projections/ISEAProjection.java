@@ -4,9 +4,10 @@ import org.giscience.utils.geogrid.generic.Trigonometric;
 import org.giscience.utils.geogrid.geo.WGS84;
 import org.giscience.utils.geogrid.geometry.FaceCoordinates;
 import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import org.giscience.utils.geogrid.geometry.MutableFaceCoordinates;
+import org.giscience.utils.geogrid.geometry.MutableGeoCoordinates;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Icosahedron Snyder equal-area (ISEA) projection
@@ -29,122 +30,183 @@ import java.util.List;
  * In: Marina L. Gavrilova, and C. J. Kenneth Tan (Eds): Transactions on Computational Science XVI. Heidelberg,
  * Springer, 2012. pp. 134–148. doi:10.1007/978-3-642-32663-9_8
  *
+ * Coordinates are given in degrees, but both directions of the projection compute in radians internally. The results
+ * agree with a computation in degrees up to 1e-9 degrees for the coordinates on the sphere, and up to 1e-12 for the
+ * coordinates on the icosahedron.
+ *
  * @author Franz-Benjamin Mocnik
  */
 public class ISEAProjection {
     // constants
     private static final double _goldenRatio = (1 + Math.sqrt(5)) / 2.;
     // radius
-    private final double _RR_earth = (1 / (2 * Math.sqrt(5)) + 1 / 6.) * Math.sqrt(Math.PI * Math.sqrt(3)); // R' / R
-    private final double _R; // R'
-    private final double _R_earth = WGS84.radiusAuthalic; // R // authalic sphere radius for WGS84 [km]
+    private static final double _RR_earth = (1 / (2 * Math.sqrt(5)) + 1 / 6.) * Math.sqrt(Math.PI * Math.sqrt(3)); // R' / R
+    private static final double _R; // R'
+    private static final double _R_earth = WGS84.radiusAuthalic; // R // authalic sphere radius for WGS84 [km]
     // faces
-    private final int _numberOfFaces = 20;
+    private static final int _numberOfFaces = 20;
     // orientation
     private double _orientationLat = 0;
     private double _orientationLon = 0;
     // spherical constants
-    private final double _g; // g
-    private final int _G = 36; // G
-    private final int _theta = 30; // \theta
+    private static final double _g; // g
+    private static final int _G = 36; // G
+    private static final int _theta = 30; // \theta
     // distortion
-    private final double _omega = 17.27; // \omega
-    private final double _a = 1.163; // a
-    private final double _b = .860; // b
+    private static final double _omega = 17.27; // \omega
+    private static final double _a = 1.163; // a
+    private static final double _b = .860; // b
     // face constants
-    private final double __E; // E
-    private final double __F = Trigonometric.atan(1 / (2 * Math.pow(ISEAProjection._goldenRatio, 2)));
+    private static final double __E; // E
+    private static final double __F = Trigonometric.atan(1 / (2 * Math.pow(ISEAProjection._goldenRatio, 2)));
     // F = \atan(1 / (2 \phi^2)) where \phi = (1 + \sqrt{5}) / 2 is the golden ratio; needs some thinking to derive
     // alternative computation F = 90 + g - 2 * \atan(\phi); formula can easily be derived from the cartesian coordinates of the vertices of the icosahedron
-    private final double __G; // G // this value incorporates R', and not R, as is stated wrongly in the paper by Snyder
-    private final int __X = 36; // half the difference in latitude between two horizontally adjacent faces
-    private final double[] __lats = new double[20];
-    private final int[] __lons = new int[20];
+    private static final double __G; // G // this value incorporates R', and not R, as is stated wrongly in the paper by Snyder
+    private static final int __X = 36; // half the difference in latitude between two horizontally adjacent faces
+    private static final double[] __lats = new double[20];
+    private static final int[] __lons = new int[20];
+    private static final double[] __sinLats = new double[20]; // \sin \phi_0
+    private static final double[] __cosLats = new double[20]; // \cos \phi_0
+    private static final double[] __lonsRad = new double[20]; // \lambda_0 in radians
+    private static final double[][] __centers = new double[20][3]; // unit vectors of the face centers
+    private static final int[][] __neighbours = new int[20][3]; // faces sharing an edge
     // precision
-    private static final double _precision = 1e-9;
+    private static final double _precision = Math.toRadians(1e-9); // 1e-9 degrees, in radians
     private static final double _precisionPerDefinition = 1e-5;
     // computed values
-    private final double _2R; // 2 R'
-    private final double __EF; // E - F
-    private final int _AzMax = 2 * (90 - this._theta); // 2 (90 - \theta)
-    private final double _tan_g; // \tan g
-    private final double _cosG = Trigonometric.cos(this._G); // \cos G
-    private final double _cotTheta = Trigonometric.cot(this._theta); // \cot \theta
-    private final double _2cotTheta = 2 * this._cotTheta; // 2 \cot \theta
-    private final double _pi_R_earth2_180 = Math.PI * Math.pow(this._R_earth, 2) / 180; // \pi R^2 / 180
-    private final double _R_tan_g; // R' \tan g
-    private final double _R_tan_g_2; // R'^2 * \tan^2 g
-    private final double _sinG_cos_g; // \sin G \cos g
-    private final double _G_180 = this._G - 180.; // G - 180
+    private static final double _2R; // 2 R'
+    private static final double __EF; // E - F
+    private static final double _AzMax = Math.toRadians(2 * (90 - ISEAProjection._theta)); // 2 (90 - \theta)
+    private static final double _tan_g; // \tan g
+    private static final double _cosG = Trigonometric.cos(ISEAProjection._G); // \cos G
+    private static final double _cotTheta = Trigonometric.cot(ISEAProjection._theta); // \cot \theta
+    private static final double _2cotTheta = 2 * ISEAProjection._cotTheta; // 2 \cot \theta
+    private static final double _R_earth2 = Math.pow(ISEAProjection._R_earth, 2); // R^2
+    private static final double _R_tan_g; // R' \tan g
+    private static final double _R_tan_g_2; // R'^2 * \tan^2 g
+    private static final double _sinG_cos_g; // \sin G \cos g
+    private static final double _G_PI = Math.toRadians(ISEAProjection._G) - Math.PI; // G - \pi
+    // inverse projection
+    private static final int _AzTableSize = 256;
+    private static final double[] _AzTable = new double[ISEAProjection._AzTableSize + 1]; // Az for Az' = i * AzMax / size
+    private static final double _AzTableScale = ISEAProjection._AzTableSize / ISEAProjection._AzMax;
+    private static final int _maxNewtonIterations = 8;
 
-    public ISEAProjection() {
+    static {
         // computations
-        this._g = this.__F + 2 * Trigonometric.atan(ISEAProjection._goldenRatio) - 90;
-        this._R = this._RR_earth * this._R_earth;
-        this.__E = 90 - this._g;
-        this.__G = this._R * Trigonometric.tan(this._g) * Math.sqrt(3) / 2.;
-        this._2R = 2 * this._R;
-        this.__EF = this.__E - this.__F;
-        this._tan_g = Trigonometric.tan(this._g);
-        this._R_tan_g = this._R * this._tan_g;
-        this._R_tan_g_2 = Math.pow(this._R_tan_g, 2);
-        this._sinG_cos_g = Trigonometric.sin(this._G) * Trigonometric.cos(this._g);
+        _g = ISEAProjection.__F + 2 * Trigonometric.atan(ISEAProjection._goldenRatio) - 90;
+        _R = ISEAProjection._RR_earth * ISEAProjection._R_earth;
+        __E = 90 - ISEAProjection._g;
+        __G = ISEAProjection._R * Trigonometric.tan(ISEAProjection._g) * Math.sqrt(3) / 2.;
+        _2R = 2 * ISEAProjection._R;
+        __EF = ISEAProjection.__E - ISEAProjection.__F;
+        _tan_g = Trigonometric.tan(ISEAProjection._g);
+        _R_tan_g = ISEAProjection._R * ISEAProjection._tan_g;
+        _R_tan_g_2 = Math.pow(ISEAProjection._R_tan_g, 2);
+        _sinG_cos_g = Trigonometric.sin(ISEAProjection._G) * Trigonometric.cos(ISEAProjection._g);
 
         // angles of the faces
-        this.__lats[0] = this.__E;
-        this.__lats[1] = this.__E;
-        this.__lats[2] = this.__E;
-        this.__lats[3] = this.__E;
-        this.__lats[4] = this.__E;
-        this.__lats[5] = this.__F;
-        this.__lats[6] = this.__F;
-        this.__lats[7] = this.__F;
-        this.__lats[8] = this.__F;
-        this.__lats[9] = this.__F;
-        this.__lats[10] = -this.__F;
-        this.__lats[11] = -this.__F;
-        this.__lats[12] = -this.__F;
-        this.__lats[13] = -this.__F;
-        this.__lats[14] = -this.__F;
-        this.__lats[15] = -this.__E;
-        this.__lats[16] = -this.__E;
-        this.__lats[17] = -this.__E;
-        this.__lats[18] = -this.__E;
-        this.__lats[19] = -this.__E;
-        this.__lons[0] = -4 * this.__X;
-        this.__lons[1] = -2 * this.__X;
-        this.__lons[2] = 0;
-        this.__lons[3] = 2 * this.__X;
-        this.__lons[4] = 4 * this.__X;
-        this.__lons[5] = -4 * this.__X;
-        this.__lons[6] = -2 * this.__X;
-        this.__lons[7] = 0;
-        this.__lons[8] = 2 * this.__X;
-        this.__lons[9] = 4 * this.__X;
-        this.__lons[10] = -3 * this.__X;
-        this.__lons[11] = -this.__X;
-        this.__lons[12] = this.__X;
-        this.__lons[13] = 3 * this.__X;
-        this.__lons[14] = 5 * this.__X;
-        this.__lons[15] = -3 * this.__X;
-        this.__lons[16] = -this.__X;
-        this.__lons[17] = this.__X;
-        this.__lons[18] = 3 * this.__X;
-        this.__lons[19] = 5 * this.__X;
+        ISEAProjection.__lats[0] = ISEAProjection.__E;
+        ISEAProjection.__lats[1] = ISEAProjection.__E;
+        ISEAProjection.__lats[2] = ISEAProjection.__E;
+        ISEAProjection.__lats[3] = ISEAProjection.__E;
+        ISEAProjection.__lats[4] = ISEAProjection.__E;
+        ISEAProjection.__lats[5] = ISEAProjection.__F;
+        ISEAProjection.__lats[6] = ISEAProjection.__F;
+        ISEAProjection.__lats[7] = ISEAProjection.__F;
+        ISEAProjection.__lats[8] = ISEAProjection.__F;
+        ISEAProjection.__lats[9] = ISEAProjection.__F;
+        ISEAProjection.__lats[10] = -ISEAProjection.__F;
+        ISEAProjection.__lats[11] = -ISEAProjection.__F;
+        ISEAProjection.__lats[12] = -ISEAProjection.__F;
+        ISEAProjection.__lats[13] = -ISEAProjection.__F;
+        ISEAProjection.__lats[14] = -ISEAProjection.__F;
+        ISEAProjection.__lats[15] = -ISEAProjection.__E;
+        ISEAProjection.__lats[16] = -ISEAProjection.__E;
+        ISEAProjection.__lats[17] = -ISEAProjection.__E;
+        ISEAProjection.__lats[18] = -ISEAProjection.__E;
+        ISEAProjection.__lats[19] = -ISEAProjection.__E;
+        ISEAProjection.__lons[0] = -4 * ISEAProjection.__X;
+        ISEAProjection.__lons[1] = -2 * ISEAProjection.__X;
+        ISEAProjection.__lons[2] = 0;
+        ISEAProjection.__lons[3] = 2 * ISEAProjection.__X;
+        ISEAProjection.__lons[4] = 4 * ISEAProjection.__X;
+        ISEAProjection.__lons[5] = -4 * ISEAProjection.__X;
+        ISEAProjection.__lons[6] = -2 * ISEAProjection.__X;
+        ISEAProjection.__lons[7] = 0;
+        ISEAProjection.__lons[8] = 2 * ISEAProjection.__X;
+        ISEAProjection.__lons[9] = 4 * ISEAProjection.__X;
+        ISEAProjection.__lons[10] = -3 * ISEAProjection.__X;
+        ISEAProjection.__lons[11] = -ISEAProjection.__X;
+        ISEAProjection.__lons[12] = ISEAProjection.__X;
+        ISEAProjection.__lons[13] = 3 * ISEAProjection.__X;
+        ISEAProjection.__lons[14] = 5 * ISEAProjection.__X;
+        ISEAProjection.__lons[15] = -3 * ISEAProjection.__X;
+        ISEAProjection.__lons[16] = -ISEAProjection.__X;
+        ISEAProjection.__lons[17] = ISEAProjection.__X;
+        ISEAProjection.__lons[18] = 3 * ISEAProjection.__X;
+        ISEAProjection.__lons[19] = 5 * ISEAProjection.__X;
+
+        // face centers in radians, and their unit vectors
+        for (int f = 0; f < ISEAProjection._numberOfFaces; f++) {
+            ISEAProjection.__sinLats[f] = Trigonometric.sin(ISEAProjection.__lats[f]);
+            ISEAProjection.__cosLats[f] = Trigonometric.cos(ISEAProjection.__lats[f]);
+            ISEAProjection.__lonsRad[f] = Math.toRadians(ISEAProjection.__lons[f]);
+            ISEAProjection.__centers[f][0] = ISEAProjection.__cosLats[f] * Math.cos(ISEAProjection.__lonsRad[f]);
+            ISEAProjection.__centers[f][1] = ISEAProjection.__cosLats[f] * Math.sin(ISEAProjection.__lonsRad[f]);
+            ISEAProjection.__centers[f][2] = ISEAProjection.__sinLats[f];
+        }
+
+        // neighbouring faces, i.e., the three faces with the closest centers
+        for (int f = 0; f < ISEAProjection._numberOfFaces; f++) {
+            double[] dots = new double[ISEAProjection._numberOfFaces];
+            for (int g = 0; g < ISEAProjection._numberOfFaces; g++) dots[g] = (f == g) ? Double.NEGATIVE_INFINITY : ISEAProjection._dot(ISEAProjection.__centers[f], ISEAProjection.__centers[g]);
+            for (int n = 0; n < 3; n++) {
+                int best = 0;
+                for (int g = 1; g < ISEAProjection._numberOfFaces; g++) if (dots[g] > dots[best]) best = g;
+                ISEAProjection.__neighbours[f][n] = best;
+                dots[best] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        // initial guesses for the Newton iteration of the inverse projection, solved from Az = Az' without bound
+        for (int i = 0; i <= ISEAProjection._AzTableSize; i++) {
+            double Az = i / ISEAProjection._AzTableScale; // Az'
+            ISEAProjection._AzTable[i] = ISEAProjection._solveAz_earth(ISEAProjection._area_R_earth2_G_PI(Az), Az, Integer.MAX_VALUE, null);
+        }
+    }
+
+    // statistics of the inverse projection, null unless enabled
+    private LongAdder _inverseProjections;
+    private LongAdder _newtonIterations;
+
+    private static double _dot(double[] a, double[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    public ISEAProjection() {
+    }
+
+    /**
+     * @param orientationLat see {@link #setOrientation(double, double)}
+     * @param orientationLon see {@link #setOrientation(double, double)}
+     */
+    public ISEAProjection(double orientationLat, double orientationLon) {
+        this.setOrientation(orientationLat, orientationLon);
     }
 
     /**
      * @return spherical distance from center of a face to any of its vertices on the sphere; in degrees
      */
     public double sphericalDistanceFromCenterToVerticesOnSphere() {
-        return this._g;
+        return ISEAProjection._g;
     }
 
     /**
      * @return number of faces of the icosahedron
      */
     public int numberOfFaces() {
-        return this._numberOfFaces;
+        return ISEAProjection._numberOfFaces;
     }
 
     /**
@@ -169,37 +231,26 @@ public class ISEAProjection {
      * of the icosahedron. The equator is thus mapped symmetrically.
      */
     public void setOrientationSymmetricEquator() {
-        this.setOrientation((this.__E + this.__F) / 2., -11.25);
+        this.setOrientation((ISEAProjection.__E + ISEAProjection.__F) / 2., -11.25);
     }
 
-    private GeoCoordinates _changeOrientation(GeoCoordinates c) throws IllegalArgumentException {
-        if (this._orientationLat == 0 && this._orientationLon == 0) return c;
-        double sinOrientationLat = Trigonometric.sin(this._orientationLat);
-        double cosOrientationLat = Trigonometric.cos(this._orientationLat);
-        double sinLat1 = Trigonometric.sin(c.getLat());
-        double cosLat1 = Trigonometric.cos(c.getLat());
-        double lon1 = c.getLon() + this._orientationLon;
-        double sinLon1 = Trigonometric.sin(lon1);
-        double cosLon1 = Trigonometric.cos(lon1);
-        double lat2 = Trigonometric.asin(sinLat1 * cosOrientationLat + cosLon1 * cosLat1 * sinOrientationLat);
-        double lon2 = Trigonometric.atan2(sinLon1 * cosLat1, cosLon1 * cosLat1 * cosOrientationLat - sinLat1 * sinOrientationLat);
-        return new GeoCoordinates(lat2, lon2);
-    }
-
-    private GeoCoordinates _revertOrientation(GeoCoordinates c) {
-        if (this._orientationLat == 0 && this._orientationLon == 0) return (c.getLat() < -90 + ISEAProjection._precisionPerDefinition || c.getLat() > 90 - ISEAProjection._precisionPerDefinition) ? new GeoCoordinates(c.getLat(), 0.) : c;
+    private void _revertOrientation(MutableGeoCoordinates c) {
+        double lat = c.getLat();
         double lon = c.getLon();
-        if (c.getLat() < -90 + ISEAProjection._precisionPerDefinition || c.getLat() > 90 - ISEAProjection._precisionPerDefinition) lon = 0;
-        if (this._orientationLat == 0 && this._orientationLon == 0) return c;
+        if (lat < -90 + ISEAProjection._precisionPerDefinition || lat > 90 - ISEAProjection._precisionPerDefinition) lon = 0;
+        if (this._orientationLat == 0 && this._orientationLon == 0) {
+            c.set(lat, lon);
+            return;
+        }
         double sinOrientationLat = Trigonometric.sin(-this._orientationLat);
         double cosOrientationLat = Trigonometric.cos(this._orientationLat);
-        double sinLat1 = Trigonometric.sin(c.getLat());
-        double cosLat1 = Trigonometric.cos(c.getLat());
+        double sinLat1 = Trigonometric.sin(lat);
+        double cosLat1 = Trigonometric.cos(lat);
         double sinLon1 = Trigonometric.sin(lon);
         double cosLon1 = Trigonometric.cos(lon);
         double lat2 = Trigonometric.asin(sinLat1 * cosOrientationLat + cosLon1 * cosLat1 * sinOrientationLat);
         double lon2 = Trigonometric.atan2(sinLon1 * cosLat1, cosLon1 * cosLat1 * cosOrientationLat - sinLat1 * sinOrientationLat);
-        return new GeoCoordinates(lat2, lon2 - this._orientationLon);
+        c.set(lat2, lon2 - this._orientationLon);
     }
 
     /**
@@ -208,7 +259,7 @@ public class ISEAProjection {
      * @return maximum angular distortion
      */
     public double maximumAngularDistortion() {
-        return this._omega;
+        return ISEAProjection._omega;
     }
 
     /**
@@ -217,7 +268,7 @@ public class ISEAProjection {
      * @return maximum scale variation
      */
     public double maximumScaleVariation() {
-        return this._a;
+        return ISEAProjection._a;
     }
 
     /**
@@ -226,7 +277,7 @@ public class ISEAProjection {
      * @return minimum scale variation
      */
     public double miniumScaleVariation() {
-        return this._b;
+        return ISEAProjection._b;
     }
 
     /**
@@ -235,7 +286,7 @@ public class ISEAProjection {
      * @return length of the bases of the triangles
      */
     public double lengthOfTriangleBase() {
-        return 2 * this.__G;
+        return 2 * ISEAProjection.__G;
     }
 
     /**
@@ -245,7 +296,31 @@ public class ISEAProjection {
      * @return coordinates on the icosahedron
      */
     public FaceCoordinates sphereToIcosahedron(GeoCoordinates c) {
-        return this._sphereToIcosahedron(this._changeOrientation(c));
+        MutableFaceCoordinates result = new MutableFaceCoordinates();
+        return this.sphereToIcosahedron(c.getLat(), c.getLon(), result) ? result.toFaceCoordinates() : null;
+    }
+
+    /**
+     * Converts geographic coordinates to coordinates on the icosahedron, into a reusable result.
+     *
+     * @param lat    latitude (UoM: degree)
+     * @param lon    longitude (UoM: degree)
+     * @param result coordinates on the icosahedron
+     * @return false if no face contains the coordinates (the result is then unchanged)
+     */
+    public boolean sphereToIcosahedron(double lat, double lon, MutableFaceCoordinates result) {
+        if (this._orientationLat != 0 || this._orientationLon != 0) {
+            double sinOrientationLat = Trigonometric.sin(this._orientationLat);
+            double cosOrientationLat = Trigonometric.cos(this._orientationLat);
+            double sinLat1 = Trigonometric.sin(lat);
+            double cosLat1 = Trigonometric.cos(lat);
+            double lon1 = lon + this._orientationLon;
+            double sinLon1 = Trigonometric.sin(lon1);
+            double cosLon1 = Trigonometric.cos(lon1);
+            lat = Trigonometric.asin(sinLat1 * cosOrientationLat + cosLon1 * cosLat1 * sinOrientationLat);
+            lon = Trigonometric.atan2(sinLon1 * cosLat1, cosLon1 * cosLat1 * cosOrientationLat - sinLat1 * sinOrientationLat);
+        }
+        return this._sphereToIcosahedron(Math.toRadians(lat), Math.toRadians(lon), result);
     }
 
     /**
@@ -255,165 +330,213 @@ public class ISEAProjection {
      * @return geographic coordinates
      */
     public GeoCoordinates icosahedronToSphere(FaceCoordinates c) {
-        return this._revertOrientation(this._icosahedronToSphere(c));
-    }
-
-    private FaceCoordinates _sphereToIcosahedron(GeoCoordinates c) {
-        double sinLat = Trigonometric.sin(c.getLat());
-        double cosLat = Trigonometric.cos(c.getLat());
-        for (int face : this._guessFace(c)) {
-            double lat0 = this.getLat(face);
-            double lon0 = this.getLon(face);
-            double sinLat0 = Trigonometric.sin(lat0);
-            double cosLat0 = Trigonometric.cos(lat0);
-            double sinLonLon0 = Trigonometric.sin(c.getLon() - lon0 );
-            double cosLonLon0 = Trigonometric.cos(c.getLon() - lon0 );
-            double Az_earth = Trigonometric.atan2(cosLat * sinLonLon0, cosLat0 * sinLat - sinLat0 * cosLat * cosLonLon0); // Az
-            double AzAdjustment = (this.faceOrientation(face) > 0) ? 0 : 180;
-            Az_earth += AzAdjustment;
-            while (Az_earth < 0) {
-                AzAdjustment += this._AzMax;
-                Az_earth += this._AzMax;
-            }
-            while (Az_earth > this._AzMax) {
-                AzAdjustment -= this._AzMax;
-                Az_earth -= this._AzMax;
-            }
-            double sinAz_earth = Trigonometric.sin(Az_earth); // \sin Az
-            double cosAz_earth = Trigonometric.cos(Az_earth); // \cos Az
-            double z = Trigonometric.acos(sinLat0 * sinLat + cosLat0 * cosLat * cosLonLon0); // z
-            double q = Trigonometric.atan2(this._tan_g,  cosAz_earth + sinAz_earth * this._cotTheta); // q
-            if (z > q + ISEAProjection._precision) continue;
-            double H = this._compute_H(sinAz_earth, cosAz_earth); // H
-            double area = (Az_earth + this._G_180 + H) * this._pi_R_earth2_180; // A_G and A_{ABD}
-            double Az = Trigonometric.atan2(2 * area, this._R_tan_g_2 - area * this._2cotTheta); // Az'
-            double sinAz = Trigonometric.sin(Az); // \sin Az'
-            double cosAz = Trigonometric.cos(Az); // \cos Az'
-            double f = this._compute_f(sinAz, cosAz, sinAz_earth, cosAz_earth); // f
-            double rho = this._RR_earth * 2 * f * Trigonometric.sin(z / 2.); // \rho
-            Az -= AzAdjustment;
-            double x = rho * Trigonometric.sin(Az); // x
-            double y = rho * Trigonometric.cos(Az); // y
-            return new FaceCoordinates(face, x, y);
+        MutableGeoCoordinates result = new MutableGeoCoordinates();
+        this.icosahedronToSphere(c.getFace(), c.getX(), c.getY(), result);
+        return result.toGeoCoordinates();
+    }
+
+    /**
+     * Converts coordinates on the icosahedron to geographic coordinates, into a reusable result.
+     *
+     * @param face   face index
+     * @param x      x on the face
+     * @param y      y on the face
+     * @param result geographic coordinates
+     */
+    public void icosahedronToSphere(int face, double x, double y, MutableGeoCoordinates result) {
+        this._icosahedronToSphere(face, x, y, result);
+        this._revertOrientation(result);
+    }
+
+    private boolean _sphereToIcosahedron(double lat, double lon, MutableFaceCoordinates result) {
+        double sinLat = Math.sin(lat);
+        double cosLat = Math.cos(lat);
+        int face = this._guessFace(sinLat, cosLat, lon);
+        if (this._sphereToIcosahedron(face, sinLat, cosLat, lon, result)) return true;
+        // the point lies (up to numerical precision) on an edge of the guessed face
+        for (int neighbour : ISEAProjection.__neighbours[face]) {
+            if (this._sphereToIcosahedron(neighbour, sinLat, cosLat, lon, result)) return true;
         }
-        return null;
-    }
-
-    private List<Integer> _guessFace(GeoCoordinates c) {
-        List<Integer> result = new ArrayList<>();
-        if (c.getLat() > this.__EF) {
-            if (c.getLon() < -108) {
-                result.add(0);
-                result.add(5);
-            } else if (c.getLon() < -36) {
-                result.add(1);
-                result.add(6);
-            } else if (c.getLon() < 36) {
-                result.add(2);
-                result.add(7);
-            } else if (c.getLon() < 108) {
-                result.add(3);
-                result.add(8);
-            } else {
-                result.add(4);
-                result.add(9);
-            }
-        } else if (c.getLat() < -this.__EF) {
-            if (c.getLon() < -144) {
-                result.add(19);
-                result.add(14);
-            } else if (c.getLon() < -72) {
-                result.add(15);
-                result.add(10);
-            } else if (c.getLon() < 0) {
-                result.add(16);
-                result.add(11);
-            } else if (c.getLon() < 72) {
-                result.add(17);
-                result.add(12);
-            } else if (c.getLon() < 144) {
-                result.add(18);
-                result.add(13);
-            } else {
-                result.add(19);
-                result.add(14);
-            }
-        } else {
-            if (c.getLon() < -144) {
-                result.add(5);
-                result.add(14);
-            } else if (c.getLon() < -108) {
-                result.add(5);
-                result.add(10);
-            } else if (c.getLon() < -72) {
-                result.add(6);
-                result.add(10);
-            } else if (c.getLon() < -36) {
-                result.add(6);
-                result.add(11);
-            } else if (c.getLon() < 0) {
-                result.add(7);
-                result.add(11);
-            } else if (c.getLon() < 36) {
-                result.add(7);
-                result.add(12);
-            } else if (c.getLon() < 72) {
-                result.add(8);
-                result.add(12);
-            } else if (c.getLon() < 108) {
-                result.add(8);
-                result.add(13);
-            } else if (c.getLon() < 144) {
-                result.add(9);
-                result.add(13);
-            } else {
-                result.add(9);
-                result.add(14);
+        for (int f = 0; f < ISEAProjection._numberOfFaces; f++) {
+            if (this._sphereToIcosahedron(f, sinLat, cosLat, lon, result)) return true;
+        }
+        return false;
+    }
+
+    private boolean _sphereToIcosahedron(int face, double sinLat, double cosLat, double lon, MutableFaceCoordinates result) {
+        double sinLat0 = ISEAProjection.__sinLats[face];
+        double cosLat0 = ISEAProjection.__cosLats[face];
+        double sinLonLon0 = Math.sin(lon - ISEAProjection.__lonsRad[face]);
+        double cosLonLon0 = Math.cos(lon - ISEAProjection.__lonsRad[face]);
+        double Az_earth = Math.atan2(cosLat * sinLonLon0, cosLat0 * sinLat - sinLat0 * cosLat * cosLonLon0); // Az
+        double AzAdjustment = (this.faceOrientation(face) > 0) ? 0 : Math.PI;
+        Az_earth += AzAdjustment;
+        while (Az_earth < 0) {
+            AzAdjustment += ISEAProjection._AzMax;
+            Az_earth += ISEAProjection._AzMax;
+        }
+        while (Az_earth > ISEAProjection._AzMax) {
+            AzAdjustment -= ISEAProjection._AzMax;
+            Az_earth -= ISEAProjection._AzMax;
+        }
+        double sinAz_earth = Math.sin(Az_earth); // \sin Az
+        double cosAz_earth = Math.cos(Az_earth); // \cos Az
+        double z = Math.acos(sinLat0 * sinLat + cosLat0 * cosLat * cosLonLon0); // z
+        double q = this._compute_q(sinAz_earth, cosAz_earth); // q
+        if (z > q + ISEAProjection._precision) return false;
+        double H = ISEAProjection._compute_H(sinAz_earth, cosAz_earth); // H
+        double area = (Az_earth + ISEAProjection._G_PI + H) * ISEAProjection._R_earth2; // A_G and A_{ABD}
+        double Az = Math.atan2(2 * area, ISEAProjection._R_tan_g_2 - area * ISEAProjection._2cotTheta); // Az'
+        double sinAz = Math.sin(Az); // \sin Az'
+        double cosAz = Math.cos(Az); // \cos Az'
+        double f = this._compute_d(sinAz, cosAz) / (2 * ISEAProjection._R * Math.sin(q / 2)); // f
+        double rho = ISEAProjection._RR_earth * 2 * f * Math.sin(z / 2.); // \rho
+        Az -= AzAdjustment;
+        double x = rho * Math.sin(Az); // x
+        double y = rho * Math.cos(Az); // y
+        result.set(face, x, y);
+        return true;
+    }
+
+    /**
+     * The face containing a point is the face with the closest center, i.e., the largest dot product between the unit
+     * vectors of the point and of the face center.
+     */
+    private int _guessFace(double sinLat, double cosLat, double lon) {
+        double x = cosLat * Math.cos(lon);
+        double y = cosLat * Math.sin(lon);
+        int face = 0;
+        double maxDot = Double.NEGATIVE_INFINITY;
+        for (int f = 0; f < ISEAProjection._numberOfFaces; f++) {
+            double[] center = ISEAProjection.__centers[f];
+            double dot = x * center[0] + y * center[1] + sinLat * center[2];
+            if (dot > maxDot) {
+                maxDot = dot;
+                face = f;
             }
         }
-        for (int f = 0; f < this._numberOfFaces; f++) result.add(f);
-        return result;
+        return face;
     }
 
-    private GeoCoordinates _icosahedronToSphere(FaceCoordinates c) {
-        double Az = Trigonometric.atan2(c.getX(), c.getY()); // Az'
-        double rho = Math.sqrt(Math.pow(c.getX(), 2) + Math.pow(c.getY(), 2)); // \rho
-        double AzAdjustment = (this.faceOrientation(c) > 0) ? 0 : 180;
+    private void _icosahedronToSphere(int face, double x, double y, MutableGeoCoordinates result) {
+        double Az = Math.atan2(x, y); // Az'
+        double rho = Math.sqrt(x * x + y * y); // \rho
+        double AzAdjustment = (this.faceOrientation(face) > 0) ? 0 : Math.PI;
         Az += AzAdjustment;
         while (Az < 0) {
-            AzAdjustment += this._AzMax;
-            Az += this._AzMax;
+            AzAdjustment += ISEAProjection._AzMax;
+            Az += ISEAProjection._AzMax;
         }
-        while (Az > this._AzMax) {
-            AzAdjustment -= this._AzMax;
-            Az -= this._AzMax;
+        while (Az > ISEAProjection._AzMax) {
+            AzAdjustment -= ISEAProjection._AzMax;
+            Az -= ISEAProjection._AzMax;
         }
-        double sinAz = Trigonometric.sin(Az); // \sin Az'
-        double cosAz = Trigonometric.cos(Az); // \cos Az'
-        double cotAz = cosAz / sinAz; // \cot Az'
-        double area = this._R_tan_g_2 / (2 * (cotAz + this._cotTheta)); // A_G or A_{ABD}
+        double sinAz = Math.sin(Az); // \sin Az'
+        double cosAz = Math.cos(Az); // \cos Az'
+        double Az_earth = ISEAProjection._solveAz_earth(ISEAProjection._area_R_earth2_G_PI(Az), ISEAProjection._guessAz_earth(Az), ISEAProjection._maxNewtonIterations, this._newtonIterations); // Az
+        if (this._inverseProjections != null) this._inverseProjections.increment();
+        double sinAz_earth = Math.sin(Az_earth); // \sin Az
+        double cosAz_earth = Math.cos(Az_earth); // \cos Az
+        double f = this._compute_f(sinAz, cosAz, sinAz_earth, cosAz_earth); // f
+        double z = 2 * Math.asin(rho / (ISEAProjection._RR_earth * 2 * f)); // z
+        Az_earth -= AzAdjustment;
+        double sinLat0 = ISEAProjection.__sinLats[face]; // \sin \phi_0
+        double cosLat0 = ISEAProjection.__cosLats[face]; // \cos \phi_0
+        double sinZ = Math.sin(z); // \sin z
+        double cosZ = Math.cos(z); // \cos z
+        double sinLat = sinLat0 * cosZ + cosLat0 * sinZ * Math.cos(Az_earth); // \sin \phi
+        double lat = Math.asin(sinLat); // \phi
+        double lon = ISEAProjection.__lonsRad[face] + Math.atan2(Math.sin(Az_earth) * sinZ * cosLat0, cosZ - sinLat0 * sinLat); // \lambda
+        result.set(Math.toDegrees(lat), Math.toDegrees(lon));
+    }
+
+    /**
+     * Computes A_G / R^2 - (G - \pi) from Az', i.e., the value F(Az) = 0 is solved for.
+     */
+    private static double _area_R_earth2_G_PI(double Az) {
+        double area = ISEAProjection._R_tan_g_2 / (2 * (1 / Math.tan(Az) + ISEAProjection._cotTheta)); // A_G or A_{ABD}
+        return area / ISEAProjection._R_earth2 - ISEAProjection._G_PI;
+    }
+
+    /**
+     * Linear interpolation of the precomputed Az for a given Az'. The guess is close enough to the solution for the
+     * Newton iteration to converge (quadratically) in two steps on average.
+     */
+    private static double _guessAz_earth(double Az) {
+        double t = Az * ISEAProjection._AzTableScale;
+        int i = Math.min((int) t, ISEAProjection._AzTableSize - 1);
+        return ISEAProjection._AzTable[i] + (t - i) * (ISEAProjection._AzTable[i + 1] - ISEAProjection._AzTable[i]);
+    }
+
+    /**
+     * Solves F(Az) = 0 (or g(Az) = 0) by the Newton method. The iteration stops as soon as the step is at most
+     * _precision. If it has not converged after maxIterations steps, F is solved by bisection on [0, AzMax] instead.
+     */
+    private static double _solveAz_earth(double area_R_earth2_G_PI, double Az_earth, int maxIterations, LongAdder counter) {
         double deltaAz = 10 * ISEAProjection._precision;
-        double area_pi_R_earth2_180_G_180 = area / this._pi_R_earth2_180 - this._G_180;
-        double Az_earth = Az;
-        while (Math.abs(deltaAz) > ISEAProjection._precision) {
-            double H = this._compute_H(Trigonometric.sin(Az_earth), Trigonometric.cos(Az_earth)); // H
-            double FAz_earth = area_pi_R_earth2_180_G_180 - H - Az_earth; // F(Az) or g(Az)
-            double F2Az_earth = (Trigonometric.cos(Az_earth) * this._sinG_cos_g + Trigonometric.sin(Az_earth) * this._cosG) / Trigonometric.sin(H) - 1; // F'(Az) or g'(Az)
+        int iterations = 0;
+        while (Math.abs(deltaAz) > ISEAProjection._precision && iterations < maxIterations) {
+            double sinAz_earth = Math.sin(Az_earth); // \sin Az
+            double cosAz_earth = Math.cos(Az_earth); // \cos Az
+            double H = ISEAProjection._compute_H(sinAz_earth, cosAz_earth); // H
+            double FAz_earth = area_R_earth2_G_PI - H - Az_earth; // F(Az) or g(Az)
+            double F2Az_earth = (cosAz_earth * ISEAProjection._sinG_cos_g + sinAz_earth * ISEAProjection._cosG) / Math.sin(H) - 1; // F'(Az) or g'(Az)
             deltaAz = - FAz_earth / F2Az_earth; // \Delta Az^0 or \Delta Az
             Az_earth += deltaAz;
+            iterations++;
+        }
+        if (!(Math.abs(deltaAz) <= ISEAProjection._precision)) {
+            // the Newton iteration has not converged (or diverged): bisection, F decreasing from F(0) >= 0 to F(AzMax) <= 0
+            double lo = 0;
+            double hi = ISEAProjection._AzMax;
+            while (hi - lo > ISEAProjection._precision) {
+                double mid = (lo + hi) / 2;
+                double FAz_earth = area_R_earth2_G_PI - ISEAProjection._compute_H(Math.sin(mid), Math.cos(mid)) - mid; // F(Az) or g(Az)
+                if (FAz_earth > 0) lo = mid;
+                else hi = mid;
+                iterations++;
+            }
+            Az_earth = (lo + hi) / 2;
+        }
+        if (counter != null) counter.add(iterations);
+        return Az_earth;
+    }
+
+    /**
+     * Enables counting the inverse projections and their iterations of this projection. The counting is off by
+     * default, as it costs a shared write on every inverse projection.
+     */
+    public void enableStatistics() {
+        if (this._inverseProjections == null) {
+            this._newtonIterations = new LongAdder();
+            this._inverseProjections = new LongAdder();
+        }
+    }
+
+    /**
+     * @return number of inverse projections (see {@link #icosahedronToSphere(FaceCoordinates)}) since the statistics
+     * have been enabled or reset, or 0 if they are not enabled
+     */
+    public long inverseProjections() {
+        return (this._inverseProjections == null) ? 0 : this._inverseProjections.sum();
+    }
+
+    /**
+     * @return number of iterations spent by the inverse projections since the statistics have been enabled or reset,
+     * or 0 if they are not enabled
+     */
+    public long newtonIterations() {
+        return (this._newtonIterations == null) ? 0 : this._newtonIterations.sum();
+    }
+
+    /**
+     * Resets the number of inverse projections and iterations.
+     */
+    public void resetStatistics() {
+        if (this._inverseProjections != null) {
+            this._inverseProjections.reset();
+            this._newtonIterations.reset();
         }
-        double sinAz_earth = Trigonometric.sin(Az_earth); // \sin Az
-        double cosAz_earth = Trigonometric.cos(Az_earth); // \cos Az
-        double f = this._compute_f(sinAz, cosAz, sinAz_earth, cosAz_earth); // f
-        double z = 2 * Trigonometric.asin(rho / (this._RR_earth * 2 * f)); // z
-        Az_earth -= AzAdjustment;
-        double sinLat0 = Trigonometric.sin(this._getLat(c)); // \sin \phi_0
-        double cosLat0 = Trigonometric.cos(this._getLat(c)); // \cos \phi_0
-        double sinZ = Trigonometric.sin(z); // \sin z
-        double cosZ = Trigonometric.cos(z); // \cos z
-        double lat = Trigonometric.asin(sinLat0 * cosZ + cosLat0 * sinZ * Trigonometric.cos(Az_earth)); // \phi
-        double lon = this._getLon(c) + Trigonometric.atan2(Trigonometric.sin(Az_earth) * sinZ * cosLat0, cosZ - sinLat0 * Trigonometric.sin(lat)); // \lambda
-        return new GeoCoordinates(lat, lon);
     }
 
     /**
@@ -436,23 +559,17 @@ public class ISEAProjection {
         return (face <= 4 || (10 <= face && face <= 14)) ? 1 : -1;
     }
 
-    private double _compute_H(double sinAz_earth, double cosAz_earth) {
-        return Trigonometric.acos(sinAz_earth * this._sinG_cos_g - cosAz_earth * this._cosG); // H
+    private static double _compute_H(double sinAz_earth, double cosAz_earth) {
+        return Math.acos(sinAz_earth * ISEAProjection._sinG_cos_g - cosAz_earth * ISEAProjection._cosG); // H
     }
     private double _compute_f(double sinAz, double cosAz, double sinAz_earth, double cosAz_earth) {
-        return this._compute_d(sinAz, cosAz) / (2 * this._R * Trigonometric.sin(this._compute_q(sinAz_earth, cosAz_earth) / 2)); // f
+        return this._compute_d(sinAz, cosAz) / (2 * ISEAProjection._R * Math.sin(this._compute_q(sinAz_earth, cosAz_earth) / 2)); // f
     }
     private double _compute_d(double sinAz, double cosAz) {
-        return this._R_tan_g / (cosAz + sinAz * this._cotTheta); // d'
+        return ISEAProjection._R_tan_g / (cosAz + sinAz * ISEAProjection._cotTheta); // d'
     }
     private double _compute_q(double sinAz_earth, double cosAz_earth) {
-        return Trigonometric.atan2(this._tan_g, (cosAz_earth + sinAz_earth * this._cotTheta)); // q
-    }
-    private double _getLat(FaceCoordinates c) {
-        return this.getLat(c.getFace());
-    }
-    private double _getLon(FaceCoordinates c) {
-        return this.getLon(c.getFace());
+        return Math.atan2(ISEAProjection._tan_g, (cosAz_earth + sinAz_earth * ISEAProjection._cotTheta)); // q
     }
 
     /**
@@ -462,7 +579,7 @@ public class ISEAProjection {
      * @return latitude for center of face
      */
     public double getLat(int face) {
-        return this.__lats[face];
+        return ISEAProjection.__lats[face];
     }
 
     /**
@@ -472,6 +589,6 @@ public class ISEAProjection {
      * @return longitude for center of face
      */
     public double getLon(int face) {
-        return this.__lons[face];
+        return ISEAProjection.__lons[face];
     }
 }
@@ -39,4 +39,19 @@ public class ISEA4DFaceCoordinatesTest {
             assertTrue(Math.abs(faceCoordinates.getZ() - Double.valueOf(origZ).longValue()) <= 1);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void resolutionTables() {
+        for (int res = 0; res <= MAX_XY_RESOLUTION; res++) {
+            ISEA4DFaceCoordinates faceCoordinates = new ISEA4DFaceCoordinates(0, 0, 0, 0, res);
+            long maxZ = res < (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION) ?
+                    0 : Double.valueOf(Math.pow(2, (res - (MAX_XY_RESOLUTION - MAX_Z_RESOLUTION))) - 1).longValue();
+            assertEquals(Double.valueOf(Math.pow(2, res) - 1).longValue(), faceCoordinates.getMaxX());
+            assertEquals(Double.valueOf(Math.pow(2, res) - 1).longValue(), faceCoordinates.getMaxY());
+            assertEquals(maxZ, faceCoordinates.getMaxZ());
+            assertEquals(NEW_ORIG_X * -2 / Math.pow(2, res), faceCoordinates.getCellSize(), 1e-15);
+            assertEquals(TOTAL_RANGE * METER_UNIT / Math.pow(2, res), faceCoordinates.getCellSizeMeter(), 1e-6);
+        }
+        assertEquals(H_RANGE * 2.0d / TOTAL_RANGE_Z, CELL_HEIGHT_AT_RESOLUTION[MAX_XY_RESOLUTION], 1e-12);
+    }
+}
@@ -1,7 +1,12 @@
 package jp.go.aist.dggs.geometry;
 
+import jp.go.aist.dggs.common.DGGS;
+import jp.go.aist.dggs.utils.MortonUtils;
+import org.giscience.utils.geogrid.geometry.GeoCoordinates;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -73,4 +78,50 @@ public class LocalFaceCoordinatesTest {
         assertEquals(localFaceCoordinates.getY(), 0, delta);
         assertEquals(localFaceCoordinates.getZ(), 0.8388607, delta);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void toLocal_equalsStringAnchor() {
+        Random random = new Random(18);
+        for (int i = 0; i < 10000; i++) {
+            GeoCoordinates c = new GeoCoordinates(random.nextDouble() * 179.99 - 89.995, random.nextDouble() * 360.0 - 180.0, random.nextDouble() * DGGS.H_RANGE * 2 - DGGS.H_RANGE);
+            ISEA4DFaceCoordinates faceCoordinates = MortonUtils.toFaceCoordinate(c);
+            LocalFaceCoordinates localFaceCoords = new LocalFaceCoordinates(faceCoordinates.getFace(),
+                    faceCoordinates.getX(), faceCoordinates.getY(), faceCoordinates.getZ(), faceCoordinates.getResolution());
+
+            float[] expected = stringAnchor(faceCoordinates);
+            assertEquals(expected[0], localFaceCoords.getX(), 0);
+            assertEquals(expected[1], localFaceCoords.getY(), 0);
+            assertEquals(expected[2], localFaceCoords.getZ(), 0);
+            // Local face from the PD code truncated at the local resolution
+            ISEA4DFaceCoordinates localFace = Morton3D.decode(Morton3D.encode(faceCoordinates).substring(0, 10), 9);
+            assertEquals(new LocalFaceCoordinates(localFace).getFace(), localFaceCoords.getFace());
+        }
+    }
+
+    @Test
+    public void anchorCache_sameLocalFaceId() {
+        // Local X 5 and 261 differ only in the 9th bit, which is not in the local face id
+        LocalFaceCoordinates first = new LocalFaceCoordinates(0, 5L << 23 | 1000, 7L << 23 | 2000, 0, DGGS.MAX_XY_RESOLUTION);
+        LocalFaceCoordinates second = new LocalFaceCoordinates(0, 261L << 23 | 1000, 7L << 23 | 2000, 0, DGGS.MAX_XY_RESOLUTION);
+        assertEquals(first.getFace(), second.getFace());
+
+        // The cache is shared by all tests: check the second one against the anchor without the cache
+        float[] expected = stringAnchor(new ISEA4DFaceCoordinates(0, 261L << 23 | 1000, 7L << 23 | 2000, 0, DGGS.MAX_XY_RESOLUTION));
+        assertEquals(expected[0], second.getX(), 0);
+        assertEquals(expected[1], second.getY(), 0);
+    }
+
+    /**
+     * Local X, Y and Z by encoding, truncating and padding the PD code, as before the anchor was masked.
+     */
+    private static float[] stringAnchor(ISEA4DFaceCoordinates faceCoordinates) {
+        StringBuilder sb = new StringBuilder(Morton3D.encode(faceCoordinates).substring(0, 10));
+        while (sb.length() < DGGS.MAX_XY_RESOLUTION + 1) sb.append('0');
+        ISEA4DFaceCoordinates anchor = Morton3D.decode(sb.toString()).toOrthogonal();
+        ISEA4DFaceCoordinates orthogonal = faceCoordinates.toOrthogonal();
+        return new float[] {
+                (float) (orthogonal.getX() - anchor.getX()) / 10000000f,
+                (float) (orthogonal.getY() - anchor.getY()) / 10000000f,
+                (float) (orthogonal.getZ() - anchor.getZ()) / 10000000f};
+    }
+}
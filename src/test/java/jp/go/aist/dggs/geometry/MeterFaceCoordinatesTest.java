@@ -2,9 +2,12 @@ package jp.go.aist.dggs.geometry;
 
 import ch.hsr.geohash.WGS84Point;
 import ch.hsr.geohash.util.VincentyGeodesy;
+import jp.go.aist.dggs.common.DGGS;
 import jp.go.aist.dggs.utils.MortonUtils;
 import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import java.nio.FloatBuffer;
 import java.util.Objects;
+import java.util.Random;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
@@ -119,4 +122,100 @@ public class MeterFaceCoordinatesTest {
             System.out.println("ISEA distance: " + meterFaceCoordA.distance2DTo(meterFaceCoordB));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void toMeter_equalsStringAnchor() {
+        for (int i = 0; i < 10000; i++) {
+            GeoCoordinates c = new GeoCoordinates(Math.random() * 179.99 - 89.995, Math.random() * 360.0 - 180.0, Math.random() * DGGS.H_RANGE * 2 - DGGS.H_RANGE);
+            ISEA4DFaceCoordinates faceCoordinates = MortonUtils.toFaceCoordinate(c);
+            MeterFaceCoordinates meterFaceCoords = faceCoordinates.toMeterUnit();
+
+            // Anchor by encoding, truncating and padding the PD code
+            String localMorton = Morton3D.encode(faceCoordinates).substring(0, 9);
+            StringBuilder sb = new StringBuilder(localMorton);
+            while (sb.length() < DGGS.MAX_XY_RESOLUTION + 1) sb.append('0');
+            ISEA4DFaceCoordinates anchor = Morton3D.decode(sb.toString()).toOrthogonal();
+            ISEA4DFaceCoordinates orthogonal = faceCoordinates.toOrthogonal();
+
+            assertEquals(Integer.parseInt(localMorton), meterFaceCoords.getFace());
+            assertEquals((float) ((orthogonal.getX() - anchor.getX()) * DGGS.METER_UNIT), meterFaceCoords.getX(), 0);
+            assertEquals((float) ((orthogonal.getY() - anchor.getY()) * DGGS.METER_UNIT), meterFaceCoords.getY(), 0);
+            assertTrue(faceCoordinates.distance3DTo(meterFaceCoords.toISEA4DFaceCoordinates()) <= 0.01);
+        }
+    }
+
+    @Test
+    public void toMeter_faceZero() {
+        ISEA4DFaceCoordinates faceCoordinates = Morton3D.decode("000123012244674622345202112244267");
+        MeterFaceCoordinates meterFaceCoords = faceCoordinates.toMeterUnit();
+        assertEquals(123012, meterFaceCoords.getFace());
+        assertTrue(faceCoordinates.distance3DTo(meterFaceCoords.toISEA4DFaceCoordinates()) <= 0.01);
+    }
+
+    @Test
+    public void toMeterUnits_packed() {
+        long[] packedCodes = new long[1000];
+        for (int i = 0; i < packedCodes.length; i++) {
+            GeoCoordinates c = new GeoCoordinates(Math.random() * 179.99 - 89.995, Math.random() * 360.0 - 180.0, Math.random() * DGGS.H_RANGE * 2 - DGGS.H_RANGE);
+            packedCodes[i] = Morton3D.encodeLong(MortonUtils.toFaceCoordinate(c), DGGS.MAX_PACKED_3D_RESOLUTION);
+        }
+        int[] localFaces = new int[packedCodes.length];
+        FloatBuffer xyz = FloatBuffer.allocate(packedCodes.length * 3 + 1);
+        xyz.position(1);
+        MeterFaceCoordinates.toMeterUnits(packedCodes, localFaces, xyz);
+
+        assertEquals(1, xyz.position());
+        for (int i = 0; i < packedCodes.length; i++) {
+            ISEA4DFaceCoordinates faceCoordinates = MortonUtils.toFaceCoordinate(Morton3D.decodeLong(packedCodes[i]), DGGS.MAX_XY_RESOLUTION);
+            MeterFaceCoordinates meterFaceCoords = faceCoordinates.toMeterUnit();
+            assertEquals(meterFaceCoords.getFace(), localFaces[i]);
+            assertEquals(meterFaceCoords.getX(), xyz.get(1 + 3 * i), 0);
+            assertEquals(meterFaceCoords.getY(), xyz.get(2 + 3 * i), 0);
+            assertEquals(meterFaceCoords.getZ(), xyz.get(3 + 3 * i), 0);
+        }
+    }
+
+    @Test
+    public void toMeterUnits_array() {
+        Random random = new Random(18);
+        long[] packedCodes = new long[1000];
+        for (int i = 0; i < packedCodes.length; i++) {
+            GeoCoordinates c = new GeoCoordinates(random.nextDouble() * 179.99 - 89.995, random.nextDouble() * 360.0 - 180.0, random.nextDouble() * DGGS.H_RANGE * 2 - DGGS.H_RANGE);
+            packedCodes[i] = Morton3D.encodeLong(MortonUtils.toFaceCoordinate(c), 8 + i % (DGGS.MAX_PACKED_3D_RESOLUTION - 7));
+        }
+        int[] localFaces = new int[packedCodes.length];
+        float[] xyz = new float[packedCodes.length * 3];
+        MeterFaceCoordinates.toMeterUnits(packedCodes, localFaces, xyz);
+
+        for (int i = 0; i < packedCodes.length; i++) {
+            MeterFaceCoordinates meterFaceCoords = MortonUtils.toFaceCoordinate(Morton3D.decodeLong(packedCodes[i]), DGGS.MAX_XY_RESOLUTION).toMeterUnit();
+            assertEquals(meterFaceCoords.getFace(), localFaces[i]);
+            assertEquals(meterFaceCoords.getX(), xyz[3 * i], 0);
+            assertEquals(meterFaceCoords.getY(), xyz[3 * i + 1], 0);
+            assertEquals(meterFaceCoords.getZ(), xyz[3 * i + 2], 0);
+        }
+    }
+
+    @Test
+    public void anchorCache() {
+        // The cache is shared by all tests: only count what this test adds
+        AnchorCache cache = MeterFaceCoordinates.getAnchorCache();
+        long hits = cache.hits();
+        long misses = cache.misses();
+
+        // All points are in the same cell at the local resolution
+        ISEA4DFaceCoordinates origin = Morton3D.decode("803323032244674622345202112244267");
+        MeterFaceCoordinates first = origin.toMeterUnit();
+        for (int i = 0; i < 1000; i++) {
+            ISEA4DFaceCoordinates faceCoordinates = new ISEA4DFaceCoordinates(origin.getFace(),
+                    origin.getX() + i, origin.getY() + i, origin.getZ(), DGGS.MAX_XY_RESOLUTION);
+            MeterFaceCoordinates meterFaceCoords = faceCoordinates.toMeterUnit();
+            assertEquals(first.getFace(), meterFaceCoords.getFace());
+            assertTrue(faceCoordinates.distance3DTo(meterFaceCoords.toISEA4DFaceCoordinates()) <= 0.01);
+        }
+        hits = cache.hits() - hits;
+        misses = cache.misses() - misses;
+        assertTrue(misses <= 1);
+        assertTrue(hits >= 0.99 * (hits + misses));
+    }
+}
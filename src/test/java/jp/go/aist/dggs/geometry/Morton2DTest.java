@@ -1,7 +1,14 @@
 package jp.go.aist.dggs.geometry;
 
+import jp.go.aist.dggs.utils.PackedPDCode;
 import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static jp.go.aist.dggs.common.DGGS.MAX_PACKED_2D_RESOLUTION;
+import static jp.go.aist.dggs.common.DGGS.MAX_XY_RESOLUTION;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author TaehoonKim AIST DPRT, Research Assistant
@@ -32,6 +39,47 @@ public class Morton2DTest {
 
     }
 
+    @Test
+    public void decode_CharSequenceAndBytes() {
+        ISEA4DFaceCoordinates result = Morton2D.decode(new StringBuilder("13210"), 4);
+        assertEquals(10, result.getX());
+        assertEquals(12, result.getY());
+
+        result = Morton2D.decode("132131320021111031113113012133203".getBytes(StandardCharsets.US_ASCII), 0, 33, 32);
+        assertEquals(1, result.getFace());
+        assertEquals(3158179513L, result.getX());
+        assertEquals(3594588765L, result.getY());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidFace() {
+        Morton2D.decode("A123", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidFaceBytes() {
+        Morton2D.decode("A123".getBytes(StandardCharsets.US_ASCII), 0, 4, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromPDCode_empty() {
+        Morton2D.fromPDCode("");
+    }
+
+    @Test
+    public void encodeInterleaved_equalsEncode() {
+        for (int i = 0; i < _iterations / 10; i++) {
+            int face = (int) (Math.random() * 10);
+            long x = (long) (Math.random() * 4294967296L);
+            long y = (long) (Math.random() * 4294967296L);
+            ISEA4DFaceCoordinates faceCoordinates = new ISEA4DFaceCoordinates(face, x, y, MAX_XY_RESOLUTION);
+            int resolution = i % (MAX_XY_RESOLUTION + 2);
+            assertEquals(Morton2D.encode(faceCoordinates, resolution), Morton2D.encodeInterleaved(faceCoordinates, resolution));
+        }
+        ISEA4DFaceCoordinates max = new ISEA4DFaceCoordinates(9, 4294967295L, 4294967295L, MAX_XY_RESOLUTION);
+        assertEquals(Morton2D.encode(max, MAX_XY_RESOLUTION), Morton2D.encodeInterleaved(max, MAX_XY_RESOLUTION));
+    }
+
     @Test
     public void encode_decode() {
         for(int i = 0; i < _iterations; i++) {
@@ -43,4 +91,54 @@ public class Morton2DTest {
             assertEquals(y, result.getY());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodeLong() {
+        long packedCode = Morton2D.encodeLong(new ISEA4DFaceCoordinates(1,3158179513L,3594588765L,20));
+        assertEquals("132131320021111031113", Morton2D.toPDCode(packedCode));
+        assertEquals(1, PackedPDCode.getFace(packedCode));
+        assertEquals(20, PackedPDCode.getResolution(packedCode));
+        assertEquals(packedCode, Morton2D.fromPDCode("132131320021111031113"));
+    }
+
+    @Test
+    public void encodeLong_decodeLong() {
+        for(int i = 0; i < _iterations; i++) {
+            long x = (long) (Math.random() * 4294967295L);
+            long y = (long) (Math.random() * 4294967295L);
+            int resolution = (int) (Math.random() * (MAX_PACKED_2D_RESOLUTION + 1));
+            ISEA4DFaceCoordinates faceCoordinates = new ISEA4DFaceCoordinates(9,x,y,32);
+            String pdCode = Morton2D.encode(faceCoordinates, resolution);
+            long packedCode = Morton2D.encodeLong(faceCoordinates, resolution);
+            assertEquals(pdCode, Morton2D.toPDCode(packedCode));
+            assertEquals(packedCode, Morton2D.fromPDCode(pdCode));
+
+            ISEA4DFaceCoordinates expected = Morton2D.decode(pdCode, resolution);
+            ISEA4DFaceCoordinates result = Morton2D.decodeLong(packedCode);
+            assertEquals(expected.getX(), result.getX());
+            assertEquals(expected.getY(), result.getY());
+            assertEquals(resolution, result.getResolution());
+        }
+    }
+
+    @Test
+    public void packedCode_hierarchy() {
+        String pdCode = "1321032103210321032103210";
+        long packedCode = Morton2D.fromPDCode(pdCode);
+        for(int res = 0; res < pdCode.length(); res++) {
+            long parent = Morton2D.parent(packedCode, res);
+            assertEquals(pdCode.substring(0, res + 1), Morton2D.toPDCode(parent));
+            assertTrue(Morton2D.isAncestor(parent, packedCode));
+        }
+
+        long[] children = Morton2D.children(Morton2D.fromPDCode("132"));
+        assertEquals(4, children.length);
+        for(int i = 0; i < children.length; i++) {
+            assertEquals("132" + i, Morton2D.toPDCode(children[i]));
+        }
+        long[] range = Morton2D.descendantRange(Morton2D.fromPDCode("132"));
+        assertTrue(Morton2D.fromPDCode("131333") < range[0]);
+        assertTrue(Morton2D.fromPDCode("133") > range[1]);
+        assertTrue(!Morton2D.isAncestor(Morton2D.fromPDCode("133"), packedCode));
+    }
+}
@@ -1,7 +1,14 @@
 package jp.go.aist.dggs.geometry;
 
+import jp.go.aist.dggs.utils.PackedPDCode;
 import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static jp.go.aist.dggs.common.DGGS.MAX_PACKED_3D_RESOLUTION;
+import static jp.go.aist.dggs.common.DGGS.MAX_XY_RESOLUTION;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author TaehoonKim AIST DPRT, Research Assistant
@@ -49,6 +56,63 @@ public class Morton3DTest {
         assertEquals(code.length() - 1, result4.getResolution());
     }
 
+    @Test
+    public void decode_CharSequenceAndBytes() {
+        String code = "0545677476566767547475";
+        ISEA4DFaceCoordinates result = Morton3D.decode(new StringBuilder(code), code.length() - 1);
+        assertEquals(1419627L, result.getX());
+        assertEquals(243658L, result.getY());
+        assertEquals(2097151L, result.getZ());
+
+        byte[] bytes = ("xx" + code + "xx").getBytes(StandardCharsets.US_ASCII);
+        result = Morton3D.decode(bytes, 2, code.length(), code.length() - 1);
+        assertEquals(0, result.getFace());
+        assertEquals(1419627L, result.getX());
+        assertEquals(243658L, result.getY());
+        assertEquals(2097151L, result.getZ());
+
+        result = Morton3D.decode("83650".getBytes(StandardCharsets.US_ASCII), 0, 5, 32);
+        assertEquals(8, result.getFace());
+        assertEquals(10L << 28, result.getX());
+        assertEquals(12L << 28, result.getY());
+        assertEquals(6L << 28, result.getZ());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidDigit() {
+        Morton3D.decode("0128", 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidFace() {
+        Morton3D.decode("A123", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_invalidFaceBytes() {
+        Morton3D.decode("A123".getBytes(StandardCharsets.US_ASCII), 0, 4, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromPDCode_empty() {
+        Morton3D.fromPDCode("");
+    }
+
+    @Test
+    public void encodeInterleaved_equalsEncode() {
+        for (int i = 0; i < _iterations / 10; i++) {
+            int face = (int) (Math.random() * 10);
+            long x = (long) (Math.random() * 4294967296L);
+            long y = (long) (Math.random() * 4294967296L);
+            long z = (long) (Math.random() * 16777216L);
+            ISEA4DFaceCoordinates faceCoordinates = new ISEA4DFaceCoordinates(face, x, y, z, MAX_XY_RESOLUTION);
+            int resolution = i % (MAX_XY_RESOLUTION + 2);
+            assertEquals(Morton3D.encode(faceCoordinates, resolution), Morton3D.encodeInterleaved(faceCoordinates, resolution));
+        }
+        ISEA4DFaceCoordinates max = new ISEA4DFaceCoordinates(9, 4294967295L, 4294967295L, 16777215L, MAX_XY_RESOLUTION);
+        assertEquals(Morton3D.encode(max, MAX_XY_RESOLUTION), Morton3D.encodeInterleaved(max, MAX_XY_RESOLUTION));
+    }
+
     @Test
     public void encode_decode() {
         for(int i = 0; i < _iterations; i++) {
@@ -62,4 +126,114 @@ public class Morton3DTest {
             assertEquals(z, result.getZ());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void encodeLong() {
+        long packedCode = Morton3D.encodeLong(new ISEA4DFaceCoordinates(0,3158179513L,3594588765L,10677000L, 20));
+        assertEquals("032131320425111435553", Morton3D.toPDCode(packedCode));
+        assertEquals(0, PackedPDCode.getFace(packedCode));
+        assertEquals(20, PackedPDCode.getResolution(packedCode));
+
+        packedCode = Morton3D.encodeLong(new ISEA4DFaceCoordinates(1,1419627,243658,2097151,10));
+        assertEquals("10000000000", Morton3D.toPDCode(packedCode));
+        assertEquals(packedCode, Morton3D.fromPDCode("10000000000"));
+    }
+
+    @Test
+    public void encodeLong_decodeLong() {
+        for(int i = 0; i < _iterations; i++) {
+            long x = (long) (Math.random() * 4294967295L);
+            long y = (long) (Math.random() * 4294967295L);
+            long z = (long) (Math.random() * 16777215L);
+            int resolution = (int) (Math.random() * (MAX_PACKED_3D_RESOLUTION + 1));
+            ISEA4DFaceCoordinates faceCoordinates = new ISEA4DFaceCoordinates(9,x,y,z,32);
+            String pdCode = Morton3D.encode(faceCoordinates, resolution);
+            long packedCode = Morton3D.encodeLong(faceCoordinates, resolution);
+            assertEquals(pdCode, Morton3D.toPDCode(packedCode));
+            assertEquals(packedCode, Morton3D.fromPDCode(pdCode));
+
+            ISEA4DFaceCoordinates expected = Morton3D.decode(pdCode, resolution);
+            ISEA4DFaceCoordinates result = Morton3D.decodeLong(packedCode);
+            assertEquals(expected.getFace(), result.getFace());
+            assertEquals(expected.getX(), result.getX());
+            assertEquals(expected.getY(), result.getY());
+            assertEquals(expected.getZ(), result.getZ());
+            assertEquals(resolution, result.getResolution());
+        }
+    }
+
+    @Test
+    public void decodeLong_buffers() {
+        final int size = 1000;
+        long[] packedCodes = new long[size];
+        for(int i = 0; i < size; i++) {
+            long x = (long) (Math.random() * 4294967295L);
+            long y = (long) (Math.random() * 4294967295L);
+            long z = (long) (Math.random() * 16777215L);
+            packedCodes[i] = Morton3D.encodeLong(new ISEA4DFaceCoordinates(i % 10,x,y,z,32), MAX_PACKED_3D_RESOLUTION - i % 3);
+        }
+
+        int[] faces = new int[size];
+        long[] xs = new long[size], ys = new long[size], zs = new long[size];
+        Morton3D.decodeLong(packedCodes, faces, xs, ys, zs);
+        long[] faceCoordinates = new long[4];
+        for(int i = 0; i < size; i++) {
+            ISEA4DFaceCoordinates expected = Morton3D.decodeLong(packedCodes[i]);
+            assertEquals(expected.getFace(), faces[i]);
+            assertEquals(expected.getX(), xs[i]);
+            assertEquals(expected.getY(), ys[i]);
+            assertEquals(expected.getZ(), zs[i]);
+
+            String pdCode = Morton3D.toPDCode(packedCodes[i]);
+            Morton3D.decode(pdCode, 32, faceCoordinates);
+            ISEA4DFaceCoordinates expectedFromString = Morton3D.decode(pdCode, 32);
+            assertEquals(expectedFromString.getFace(), faceCoordinates[0]);
+            assertEquals(expectedFromString.getX(), faceCoordinates[1]);
+            assertEquals(expectedFromString.getY(), faceCoordinates[2]);
+            assertEquals(expectedFromString.getZ(), faceCoordinates[3]);
+        }
+    }
+
+    @Test
+    public void packedCode_order() {
+        String[] pdCodes = {"1", "10", "1000000000004", "10000000000040", "100000000000400", "1000000000005", "1300", "2"};
+        for(int i = 1; i < pdCodes.length; i++) {
+            assertTrue(Morton3D.fromPDCode(pdCodes[i - 1]) < Morton3D.fromPDCode(pdCodes[i]));
+        }
+    }
+
+    @Test
+    public void packedCode_hierarchy() {
+        String pdCode = "032131320425111435553";
+        long packedCode = Morton3D.fromPDCode(pdCode);
+        for(int res = 0; res <= MAX_PACKED_3D_RESOLUTION; res++) {
+            long parent = Morton3D.parent(packedCode, res);
+            assertEquals(pdCode.substring(0, res + 1), Morton3D.toPDCode(parent));
+            assertTrue(Morton3D.isAncestor(parent, packedCode));
+            long[] range = Morton3D.descendantRange(parent);
+            assertTrue(range[0] <= packedCode && packedCode <= range[1]);
+        }
+        assertTrue(!Morton3D.isAncestor(Morton3D.fromPDCode("0321313205"), packedCode));
+        assertTrue(!Morton3D.isAncestor(packedCode, Morton3D.fromPDCode("0321313204")));
+
+        long[] children = Morton3D.children(Morton3D.fromPDCode("0321313"));
+        assertEquals(4, children.length);
+        assertEquals("03213130", Morton3D.toPDCode(children[0]));
+        assertEquals("03213133", Morton3D.toPDCode(children[3]));
+        children = Morton3D.children(Morton3D.fromPDCode("032131320"));
+        assertEquals(8, children.length);
+        for(int i = 0; i < children.length; i++) {
+            assertEquals("032131320" + i, Morton3D.toPDCode(children[i]));
+            assertEquals(Morton3D.fromPDCode("032131320"), Morton3D.parent(children[i], 8));
+        }
+        long[] range = Morton3D.descendantRange(Morton3D.fromPDCode("032131320"));
+        assertTrue(Morton3D.fromPDCode("03213131") < range[0]);
+        assertTrue(Morton3D.fromPDCode("032131321") > range[1]);
+        assertTrue(Morton3D.fromPDCode("03213132077777777777") <= range[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void packedCode_childrenOutOfRange() {
+        Morton3D.children(Morton3D.fromPDCode("032131320425111435553"));
+    }
+}
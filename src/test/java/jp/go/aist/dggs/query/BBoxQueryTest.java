@@ -1,6 +1,7 @@
 package jp.go.aist.dggs.query;
 
 import ch.ethz.globis.phtree.PhTree;
+import jp.go.aist.dggs.common.DGGS;
 import jp.go.aist.dggs.geometry.Morton2D;
 import org.giscience.utils.geogrid.geometry.GeoCoordinates;
 import org.junit.Test;
@@ -12,9 +13,18 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class BBoxQueryTest {
     @Test
@@ -95,4 +105,223 @@ public class BBoxQueryTest {
         System.out.println("Min point : " + minP.getLon() + "," + minP.getLat() + "," + minP.getHeight());
         System.out.println("Max point : " + maxP.getLon() + "," + maxP.getLat() + "," + maxP.getHeight());
     }
+
+    @Test
+    public void translateQueryRange_borderCells() {
+        int resolution = 21;
+        GeoCoordinates coordLL = new GeoCoordinates(35.23484897703, 129.08242161893, 0d);
+        GeoCoordinates coordRU = new GeoCoordinates(35.2355165472, 129.08282061646, 0d);
+        int face = new BBoxQuery.QueryPoint(coordLL, resolution)._face;
+
+        // The lowest and highest cell of each column intersect the box, and the next cells do not
+        for (BBoxQuery.QueryRange qr : BBoxQuery.translateQueryRange(coordLL, coordRU, resolution)) {
+            assertTrue(intersects(face, qr.minPoint[0], qr.minPoint[1], resolution, coordLL, coordRU));
+            assertTrue(intersects(face, qr.minPoint[0], qr.maxPoint[1], resolution, coordLL, coordRU));
+            assertFalse(intersects(face, qr.minPoint[0], qr.minPoint[1] - 1, resolution, coordLL, coordRU));
+            assertFalse(intersects(face, qr.minPoint[0], qr.maxPoint[1] + 1, resolution, coordLL, coordRU));
+        }
+    }
+
+    @Test
+    public void translateQueryRange_coverage() {
+        GeoCoordinates coordLL = new GeoCoordinates(30d, 120d);
+        GeoCoordinates coordRU = new GeoCoordinates(40d, 135d);
+        final int samples = 300;
+        for (int resolution = 5; resolution <= 8; resolution++) {
+            HashMap<Long, long[]> columns = new HashMap<>();
+            for (BBoxQuery.QueryRange qr : BBoxQuery.translateQueryRange(coordLL, coordRU, resolution))
+                columns.put((long) qr.face << 32 | qr.minPoint[0], new long[] {qr.minPoint[1], qr.maxPoint[1]});
+
+            // Every point of a grid over the box (with its edges) is in a range, e.g. (38.85, 120.0) on the west edge
+            ArrayList<GeoCoordinates> points = new ArrayList<>();
+            points.add(new GeoCoordinates(38.85, 120.0));
+            for (int i = 0; i <= samples; i++) {
+                for (int j = 0; j <= samples; j++) {
+                    points.add(new GeoCoordinates(coordLL.getLat() + (coordRU.getLat() - coordLL.getLat()) * i / samples,
+                            coordLL.getLon() + (coordRU.getLon() - coordLL.getLon()) * j / samples));
+                }
+            }
+            for (GeoCoordinates c : points) {
+                ISEA4DFaceCoordinates cell = MortonUtils.toFaceCoordinate(MortonUtils.toFaceCoordinate(c), resolution);
+                long[] y = columns.get((long) cell.getFace() << 32 | cell.getX());
+                assertTrue(c + " at resolution " + resolution, y != null && cell.getY() >= y[0] && cell.getY() <= y[1]);
+            }
+        }
+    }
+
+    @Test
+    public void getBBoxQueryResultParallel() {
+        final int RES = 20;
+        PhTree<String> phTree = QueryFixture.toPhTree(QueryFixture.randomPoints(3, 20000, 34.64, 135.45, 0.01, 0.01), RES);
+        GeoCoordinates minP = new GeoCoordinates(34.641, 135.451, 0D);
+        GeoCoordinates maxP = new GeoCoordinates(34.648, 135.459, 10D);
+
+        HashSet<String> expected = BBoxQuery.getBBoxQueryResult(minP, maxP, RES, phTree);
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, BBoxQuery.getBBoxQueryResultParallel(minP, maxP, RES, phTree));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, BBoxQuery.getBBoxQueryResult(minP, maxP, RES, phTree, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getBBoxQueryResult_dimension() {
+        BBoxQuery.getBBoxQueryResult(new GeoCoordinates(34.641, 135.451, 0D), new GeoCoordinates(34.648, 135.459, 10D), 20, PhTree.create(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getBBoxQueryResultParallel_dimension() {
+        BBoxQuery.getBBoxQueryResultParallel(new GeoCoordinates(34.641, 135.451, 0D), new GeoCoordinates(34.648, 135.459, 10D), 20, PhTree.create(2));
+    }
+
+    @Test
+    public void doBBoxQuery_lazy() {
+        final int RES = 20;
+        PhTree<String> phTree = QueryFixture.toPhTree(QueryFixture.randomPoints(5, 20000, 34.64, 135.45, 0.01, 0.01), RES);
+        GeoCoordinates minP = new GeoCoordinates(34.641, 135.451, 0D);
+        GeoCoordinates maxP = new GeoCoordinates(34.648, 135.459, 10D);
+
+        HashSet<String> expected = BBoxQuery.getBBoxQueryResult(minP, maxP, RES, phTree);
+        ArrayList<String> result = new ArrayList<>();
+        BBoxQuery.doBBoxQuery(minP, maxP, RES, phTree).forEachRemaining(result::add);
+        assertEquals(expected.size(), result.size());
+        assertEquals(expected, new HashSet<>(result));
+
+        // Early termination yields the first PD codes of the whole result
+        assertEquals(result.subList(0, 10), BBoxQuery.streamBBoxQuery(minP, maxP, RES, phTree).limit(10).collect(Collectors.toList()));
+
+        // ... and stops reading the ranges
+        ArrayList<BBoxQuery.QueryRange> columns = BBoxQuery.translateQueryRange(minP, maxP, RES);
+        int[] lastRead = {-1};
+        List<BBoxQuery.QueryRange> counting = new AbstractList<BBoxQuery.QueryRange>() {
+            @Override
+            public BBoxQuery.QueryRange get(int index) {
+                lastRead[0] = Math.max(lastRead[0], index);
+                return columns.get(index);
+            }
+
+            @Override
+            public int size() {
+                return columns.size();
+            }
+        };
+        BBoxQuery.ResultIterator iterator = new BBoxQuery.ResultIterator(phTree, counting);
+        lastRead[0] = -1;
+        assertEquals(result.subList(0, 10), BBoxQuery.stream(iterator).limit(10).collect(Collectors.toList()));
+        assertTrue(lastRead[0] >= 0);
+        assertTrue(lastRead[0] < columns.size() / 2);
+
+        // Overlapping ranges are deduplicated
+        ArrayList<BBoxQuery.QueryRange> ranges = BBoxQuery.translateQueryRange(minP, maxP, RES);
+        ArrayList<BBoxQuery.QueryRange> overlapping = new ArrayList<>(ranges);
+        overlapping.addAll(ranges);
+        assertTrue(BBoxQuery.ResultIterator.overlaps(overlapping));
+        assertFalse(BBoxQuery.ResultIterator.overlaps(ranges));
+        ArrayList<String> deduplicated = new ArrayList<>();
+        new BBoxQuery.ResultIterator(phTree, overlapping).forEachRemaining(deduplicated::add);
+        assertEquals(result, deduplicated);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planQueryRange_height() {
+        QueryRangePlanner.planQueryRange(new GeoCoordinates(34.641, 135.451, 0D), new GeoCoordinates(34.648, 135.459, DGGS.H_RANGE * 2), 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void doBBoxQuery_dimension() {
+        BBoxQuery.doBBoxQuery(new GeoCoordinates(34.641, 135.451, 0D), new GeoCoordinates(34.648, 135.459, 10D), 20, PhTree.create(2));
+    }
+
+    @Test
+    public void getBBoxQueryResult_crossFace() {
+        final int RES = 16;
+        final double MARGIN = 2 * DGGS.CELL_SIZE_METER_AT_RESOLUTION[RES] / DGGS.METERS_PER_DEGREE;
+        // The box is across the edge of the faces 4 and 5 (around latitude 3.25 at longitude 20)
+        GeoCoordinates minP = new GeoCoordinates(3.2, 19.98, 0D);
+        GeoCoordinates maxP = new GeoCoordinates(3.3, 20.02, 10D);
+        GeoCoordinates[] points = QueryFixture.randomPoints(11, 20000, 3.15, 19.95, 0.2, 0.1);
+        PhTree<String> phTree = QueryFixture.toPhTree(points, RES);
+
+        ArrayList<BBoxQuery.QueryRange> ranges = BBoxQuery.translateQueryRange(minP, maxP, RES);
+        assertEquals(2, ranges.stream().mapToInt(qr -> qr.face).distinct().count());
+        HashSet<String> result = BBoxQuery.getBBoxQueryResult(minP, maxP, RES, phTree);
+
+        // Every point in the box is found, and every PD code found has a point near the box
+        HashSet<String> near = new HashSet<>();
+        for (GeoCoordinates c : points) {
+            String pdCode = MortonUtils.toPDCode(c, RES);
+            if (c.getLat() >= minP.getLat() && c.getLat() <= maxP.getLat() && c.getLon() >= minP.getLon() && c.getLon() <= maxP.getLon())
+                assertTrue(result.contains(pdCode));
+            if (c.getLat() >= minP.getLat() - MARGIN && c.getLat() <= maxP.getLat() + MARGIN
+                    && c.getLon() >= minP.getLon() - MARGIN && c.getLon() <= maxP.getLon() + MARGIN)
+                near.add(pdCode);
+        }
+        assertTrue(near.containsAll(result));
+        assertEquals(2, result.stream().map(pdCode -> pdCode.charAt(0)).distinct().count());
+
+        assertEquals(result, BBoxQuery.getBBoxQueryResultParallel(minP, maxP, RES, phTree));
+        ArrayList<String> lazy = new ArrayList<>();
+        BBoxQuery.doBBoxQuery(minP, maxP, RES, phTree).forEachRemaining(lazy::add);
+        assertEquals(result.size(), lazy.size());
+        assertEquals(result, new HashSet<>(lazy));
+
+        // Packed PD codes: one decomposition per face
+        long[] packed = BBoxQuery.getBBoxQueryResult(minP, maxP, RES, QueryFixture.toPackedPDCodes(points, RES));
+        assertEquals(result.size(), packed.length);
+        for (long code : packed) assertTrue(result.contains(Morton3D.toPDCode(code)));
+        assertEquals(2, BBoxQuery.toFaceMortonIntervals(minP, maxP, RES, MortonIntervals.DEFAULT_MAX_INTERVALS).size());
+    }
+
+    @Test
+    public void getBBoxQueryResult_otherFaces() {
+        final int RES = 18;
+        final Random R = new Random(13);
+        GeoCoordinates minP = new GeoCoordinates(34.641, 135.451, 0D);
+        GeoCoordinates maxP = new GeoCoordinates(34.648, 135.459, 10D);
+
+        // Half of the keys in the box hold a PD code of another face with the same X, Y and Z
+        PhTree<String> phTree = PhTree.create(3);
+        HashSet<String> expected = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            GeoCoordinates c = new GeoCoordinates(34.642 + R.nextDouble() * 0.005, 135.452 + R.nextDouble() * 0.006, R.nextDouble() * 10);
+            String pdCode = MortonUtils.toPDCode(c, RES);
+            if (i % 2 == 0) {
+                phTree.put(Morton3D.decode(pdCode, RES).toList(), pdCode);
+                expected.add(pdCode);
+            } else {
+                phTree.put(Morton3D.decode(pdCode, RES).toList(), (char) ('0' + (pdCode.charAt(0) - '0' + 1) % 10) + pdCode.substring(1));
+            }
+        }
+        // The keys of the other faces may replace some PD codes of the face
+        expected.removeIf(pdCode -> !pdCode.equals(phTree.get(Morton3D.decode(pdCode, RES).toList())));
+
+        assertEquals(1, BBoxQuery.translateQueryRange(minP, maxP, RES).stream().mapToInt(qr -> qr.face).distinct().count());
+        assertEquals(expected, BBoxQuery.getBBoxQueryResult(minP, maxP, RES, phTree));
+        assertEquals(expected, BBoxQuery.getBBoxQueryResultParallel(minP, maxP, RES, phTree));
+        assertEquals(expected, BBoxQuery.streamBBoxQuery(minP, maxP, RES, phTree).collect(Collectors.toSet()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toMortonIntervals_crossFace() {
+        BBoxQuery.toMortonIntervals(new GeoCoordinates(3.2, 19.98, 0D), new GeoCoordinates(3.3, 20.02, 10D), 16, MortonIntervals.DEFAULT_MAX_INTERVALS);
+    }
+
+    private static boolean intersects(int face, long x, long y, int resolution, GeoCoordinates coordLL, GeoCoordinates coordRU) {
+        final int shift = DGGS.MAX_XY_RESOLUTION - resolution;
+        final int samples = 16;
+        for (int i = 0; i <= samples; i++) {
+            for (int j = 0; j <= samples; j++) {
+                long sx = (x << shift) + ((1L << shift) - 1) * i / samples;
+                long sy = (y << shift) + ((1L << shift) - 1) * j / samples;
+                GeoCoordinates c = MortonUtils.toGeoCoordinate(new ISEA4DFaceCoordinates(face, sx, sy, 0, DGGS.MAX_XY_RESOLUTION));
+                if (c.getLat() >= coordLL.getLat() && c.getLat() <= coordRU.getLat()
+                        && c.getLon() >= coordLL.getLon() && c.getLon() <= coordRU.getLon())
+                    return true;
+            }
+        }
+        return false;
+    }
 }
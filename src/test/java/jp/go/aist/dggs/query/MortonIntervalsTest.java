@@ -0,0 +1,107 @@
+package jp.go.aist.dggs.query;
+
+import ch.ethz.globis.phtree.PhTree;
+import jp.go.aist.dggs.geometry.ISEA4DFaceCoordinates;
+import jp.go.aist.dggs.geometry.Morton2D;
+import jp.go.aist.dggs.geometry.Morton3D;
+import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static jp.go.aist.dggs.common.DGGS.*;
+import static org.junit.Assert.*;
+
+public class MortonIntervalsTest {
+    private final Random _random = new Random(42);
+
+    @Test
+    public void box3D_equalsFilter() {
+        final int res = 14;
+        long[] codes = new long[20000];
+        for (int i = 0; i < codes.length; i++) {
+            // encodeLong takes coordinates at MAX_XY_RESOLUTION
+            final int shift = MAX_XY_RESOLUTION - res;
+            codes[i] = Morton3D.encodeLong(this._random.nextInt(2) + 3, (1000L + this._random.nextInt(300)) << shift,
+                    (2000L + this._random.nextInt(300)) << shift, (long) this._random.nextInt(64) << shift, res);
+        }
+        Arrays.sort(codes);
+        long[] minPoint = {1050, 2100, 10};
+        long[] maxPoint = {1200, 2170, 40};
+
+        long[] expected = Arrays.stream(codes).filter(code -> {
+            ISEA4DFaceCoordinates c = Morton3D.decodeLong(code);
+            return c.getFace() == 3 && c.getX() >= minPoint[0] && c.getX() <= maxPoint[0] && c.getY() >= minPoint[1] && c.getY() <= maxPoint[1]
+                    && c.getZ() >= minPoint[2] && c.getZ() <= maxPoint[2];
+        }).toArray();
+        assertTrue(expected.length > 0);
+
+        for (int maxIntervals : new int[] {1, 4, 16, MortonIntervals.DEFAULT_MAX_INTERVALS, 100000}) {
+            MortonIntervals intervals = MortonIntervals.ofBox3D(3, minPoint, maxPoint, res, maxIntervals);
+            assertTrue(intervals.size() <= maxIntervals);
+            for (int i = 1; i < intervals.size(); i++) assertTrue(intervals.getHigh(i - 1) < intervals.getLow(i));
+
+            LongStream.Builder result = LongStream.builder();
+            assertEquals(expected.length, intervals.scan(codes, result));
+            assertArrayEquals(expected, result.build().toArray());
+        }
+    }
+
+    @Test
+    public void box2D_equalsFilter() {
+        final int res = 12;
+        long[] codes = new long[20000];
+        for (int i = 0; i < codes.length; i++) {
+            final int shift = MAX_XY_RESOLUTION - res;
+            codes[i] = Morton2D.encodeLong(7, (long) this._random.nextInt(1 << res) << shift, (long) this._random.nextInt(1 << res) << shift, res);
+        }
+        Arrays.sort(codes);
+        long[] minPoint = {100, 1000};
+        long[] maxPoint = {1500, 1301};
+
+        long[] expected = Arrays.stream(codes).filter(code -> {
+            ISEA4DFaceCoordinates c = Morton2D.decodeLong(code);
+            return c.getX() >= minPoint[0] && c.getX() <= maxPoint[0] && c.getY() >= minPoint[1] && c.getY() <= maxPoint[1];
+        }).toArray();
+
+        for (int maxIntervals : new int[] {1, 32, 100000}) {
+            MortonIntervals intervals = MortonIntervals.ofBox2D(7, minPoint, maxPoint, res, maxIntervals);
+            assertTrue(intervals.size() <= maxIntervals);
+
+            LongStream.Builder result = LongStream.builder();
+            intervals.scan(codes, result);
+            assertArrayEquals(expected, result.build().toArray());
+            for (long code : expected) assertTrue(intervals.contains(code));
+        }
+
+        // Exact decomposition: every interval is in the box
+        MortonIntervals intervals = MortonIntervals.ofBox2D(7, minPoint, maxPoint, res, Integer.MAX_VALUE);
+        for (int i = 0; i < intervals.size(); i++) assertTrue(intervals.isExact(i));
+    }
+
+    @Test
+    public void bboxQuery_equalsPhTree() {
+        final int res = 20;
+        GeoCoordinates[] points = QueryFixture.randomPoints(7, 10000, 34.64, 135.45, 0.01, 0.01);
+        PhTree<String> phTree = QueryFixture.toPhTree(points, res);
+        long[] codes = QueryFixture.toPackedPDCodes(points, res);
+
+        GeoCoordinates minP = new GeoCoordinates(34.642, 135.452, 0D);
+        GeoCoordinates maxP = new GeoCoordinates(34.647, 135.458, 10D);
+        HashSet<String> expected = BBoxQuery.getBBoxQueryResult(minP, maxP, res, phTree);
+        long[] result = BBoxQuery.getBBoxQueryResult(minP, maxP, res, codes);
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), result.length);
+        for (long code : result) assertTrue(expected.contains(Morton3D.toPDCode(code)));
+        assertTrue(BBoxQuery.toMortonIntervals(minP, maxP, res, MortonIntervals.DEFAULT_MAX_INTERVALS).size() <= MortonIntervals.DEFAULT_MAX_INTERVALS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void box3D_resolutionOutOfRange() {
+        MortonIntervals.ofBox3D(0, new long[] {0, 0, 0}, new long[] {1, 1, 1}, MAX_PACKED_3D_RESOLUTION + 1, 16);
+    }
+}
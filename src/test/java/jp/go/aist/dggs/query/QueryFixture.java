@@ -0,0 +1,56 @@
+package jp.go.aist.dggs.query;
+
+import ch.ethz.globis.phtree.PhTree;
+import jp.go.aist.dggs.geometry.Morton3D;
+import jp.go.aist.dggs.utils.MortonUtils;
+import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Seeded random point clouds and their indexes for the bounding box query tests.
+ *
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ * */
+final class QueryFixture {
+    private QueryFixture() {
+    }
+
+    /**
+     * @param seed      Seed of the random points
+     * @param count     Number of points
+     * @param lat       Minimum latitude of the points
+     * @param lon       Minimum longitude of the points
+     * @param latSpan   Span of the latitudes of the points (UoM: degree)
+     * @param lonSpan   Span of the longitudes of the points (UoM: degree)
+     * @return Random points with heights between 0 and 10 meters
+     */
+    static GeoCoordinates[] randomPoints(long seed, int count, double lat, double lon, double latSpan, double lonSpan) {
+        Random random = new Random(seed);
+        GeoCoordinates[] points = new GeoCoordinates[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = new GeoCoordinates(lat + random.nextDouble() * latSpan, lon + random.nextDouble() * lonSpan, random.nextDouble() * 10);
+        }
+        return points;
+    }
+
+    /**
+     * @return 3-D PhTree of the PD codes of the points, keyed by their X, Y and Z
+     */
+    static PhTree<String> toPhTree(GeoCoordinates[] points, int resolution) {
+        PhTree<String> phTree = PhTree.create(3);
+        for (GeoCoordinates c : points) {
+            String pdCode = MortonUtils.toPDCode(c, resolution);
+            phTree.put(Morton3D.decode(pdCode, resolution).toList(), pdCode);
+        }
+        return phTree;
+    }
+
+    /**
+     * @return Sorted distinct packed PD codes of the points
+     */
+    static long[] toPackedPDCodes(GeoCoordinates[] points, int resolution) {
+        return Arrays.stream(points).mapToLong(c -> Morton3D.fromPDCode(MortonUtils.toPDCode(c, resolution))).sorted().distinct().toArray();
+    }
+}
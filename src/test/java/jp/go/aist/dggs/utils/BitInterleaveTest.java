@@ -0,0 +1,79 @@
+package jp.go.aist.dggs.utils;
+
+import org.junit.Test;
+
+import static jp.go.aist.dggs.common.DGGS.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ * */
+public class BitInterleaveTest {
+    private final int _iterations = 1000000;
+
+    @Test
+    public void spread_equalsTable() {
+        for (int i = 0; i < 256; i++) {
+            assertEquals(Morton2DTable256Encode[i], BitInterleave.spread2D(i));
+            assertEquals(Morton3DTable256Encode[i], BitInterleave.spread3D(i));
+        }
+    }
+
+    @Test
+    public void compact_equalsTable() {
+        for (int i = 0; i < 256; i++) {
+            assertEquals(Morton2DTable256Decode[i], BitInterleave.compact2D(i));
+        }
+        for (int i = 0; i < 512; i++) {
+            assertEquals(Morton3DTable512Decode[i], BitInterleave.compact3D(i));
+        }
+    }
+
+    @Test
+    public void spread3D24_equalsTable() {
+        long[] spread = new long[2];
+        for (int i = 0; i < _iterations; i++) {
+            long z = (long) (Math.random() * 16777216L);
+            BitInterleave.spread3D24(z, spread);
+
+            // 12 bits of each part (36-bits Morton code)
+            long upper = (long) Morton3DTable256Encode[(int) ((z >> 20) & 0xF)] << 24 | Morton3DTable256Encode[(int) ((z >> 12) & EIGHT_BIT_MASK)];
+            long lower = (long) Morton3DTable256Encode[(int) ((z >> 8) & 0xF)] << 24 | Morton3DTable256Encode[(int) (z & EIGHT_BIT_MASK)];
+            assertEquals(upper, spread[0]);
+            assertEquals(lower, spread[1]);
+            assertEquals(z, BitInterleave.compact3D24(spread[0], spread[1]));
+        }
+    }
+
+    @Test
+    public void interleave_equalsTable() {
+        for (int i = 0; i < _iterations; i++) {
+            long x = (long) (Math.random() * 4294967295L);
+            long y = (long) (Math.random() * 4294967295L);
+            long z = (long) (Math.random() * 16777215L);
+
+            long mCode2D = 0;
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                mCode2D = mCode2D << 16
+                        | (Morton2DTable256Encode[(int) ((y >> shift) & EIGHT_BIT_MASK)] << 1)
+                        | (Morton2DTable256Encode[(int) ((x >> shift) & EIGHT_BIT_MASK)]);
+            }
+            assertEquals(mCode2D, BitInterleave.interleave2D(x, y));
+            assertEquals(x, BitInterleave.compact2D(mCode2D));
+            assertEquals(y, BitInterleave.compact2D(mCode2D >>> 1));
+
+            // Lower 16 bits of each axis (48-bits Morton code)
+            long mCode3D = 0;
+            for (int shift = 8; shift >= 0; shift -= 8) {
+                mCode3D = mCode3D << 24
+                        | (Morton3DTable256Encode[(int) ((z >> shift) & EIGHT_BIT_MASK)] << 2)
+                        | (Morton3DTable256Encode[(int) ((y >> shift) & EIGHT_BIT_MASK)] << 1)
+                        | (Morton3DTable256Encode[(int) ((x >> shift) & EIGHT_BIT_MASK)]);
+            }
+            assertEquals(mCode3D, BitInterleave.interleave3D(x & 0xFFFF, y & 0xFFFF, z & 0xFFFF));
+            assertEquals(x & 0xFFFF, BitInterleave.compact3D(mCode3D));
+            assertEquals(y & 0xFFFF, BitInterleave.compact3D(mCode3D >>> 1));
+            assertEquals(z & 0xFFFF, BitInterleave.compact3D(mCode3D >>> 2));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package jp.go.aist.dggs.utils;
+
+import jp.go.aist.dggs.geometry.ISEA4DFaceCoordinates;
+import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import org.junit.Test;
+
+import static jp.go.aist.dggs.common.DGGS.H_RANGE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ * */
+public class DistanceUtilsTest {
+    private final int _size = 1000;
+
+    @Test
+    public void oneToMany() {
+        double[] xs = random(this._size);
+        double[] ys = random(this._size);
+        double[] zs = random(this._size);
+        double[] distances2D = new double[this._size];
+        double[] distances3D = new double[this._size];
+        double[] squared2D = new double[this._size];
+        double[] squared3D = new double[this._size];
+        DistanceUtils.distances2D(xs[0], ys[0], xs, ys, distances2D);
+        DistanceUtils.distances3D(xs[0], ys[0], zs[0], xs, ys, zs, distances3D);
+        DistanceUtils.squaredDistances2D(xs[0], ys[0], xs, ys, squared2D);
+        DistanceUtils.squaredDistances3D(xs[0], ys[0], zs[0], xs, ys, zs, squared3D);
+
+        for (int i = 0; i < this._size; i++) {
+            double d2 = Math.pow(xs[i] - xs[0], 2) + Math.pow(ys[i] - ys[0], 2);
+            double d3 = d2 + Math.pow(zs[i] - zs[0], 2);
+            assertEquals(Math.sqrt(d2), distances2D[i], 1e-9);
+            assertEquals(Math.sqrt(d3), distances3D[i], 1e-9);
+            assertEquals(d2, squared2D[i], 1e-6);
+            assertEquals(d3, squared3D[i], 1e-6);
+        }
+        assertEquals(0, distances3D[0], 0);
+    }
+
+    @Test
+    public void manyToMany() {
+        int m = 37;
+        double[] ax = random(m), ay = random(m), az = random(m);
+        double[] bx = random(this._size), by = random(this._size), bz = random(this._size);
+        double[] distances2D = new double[m * this._size];
+        double[] distances3D = new double[m * this._size];
+        double[] row = new double[this._size];
+        DistanceUtils.distances2D(ax, ay, bx, by, distances2D);
+        DistanceUtils.distances3D(ax, ay, az, bx, by, bz, distances3D);
+
+        for (int i = 0; i < m; i++) {
+            DistanceUtils.distances2D(ax[i], ay[i], bx, by, row);
+            for (int j = 0; j < this._size; j++) assertEquals(row[j], distances2D[i * this._size + j], 0);
+            DistanceUtils.distances3D(ax[i], ay[i], az[i], bx, by, bz, row);
+            for (int j = 0; j < this._size; j++) assertEquals(row[j], distances3D[i * this._size + j], 0);
+        }
+    }
+
+    @Test
+    public void toOrthogonal_equalsFaceCoordinates() {
+        long[] x = new long[this._size];
+        long[] y = new long[this._size];
+        ISEA4DFaceCoordinates[] faceCoordinates = new ISEA4DFaceCoordinates[this._size];
+        for (int i = 0; i < this._size; i++) {
+            GeoCoordinates c = new GeoCoordinates(Math.random() * 179.99 - 89.995, Math.random() * 360.0 - 180.0, Math.random() * H_RANGE * 2 - H_RANGE);
+            faceCoordinates[i] = MortonUtils.toFaceCoordinate(c);
+            x[i] = faceCoordinates[i].getX();
+            y[i] = faceCoordinates[i].getY();
+        }
+        double[] orthogonalX = new double[this._size];
+        double[] orthogonalY = new double[this._size];
+        double[] distances = new double[this._size];
+        DistanceUtils.toOrthogonal(x, y, orthogonalX, orthogonalY);
+        DistanceUtils.distances2D(orthogonalX[0], orthogonalY[0], orthogonalX, orthogonalY, distances);
+
+        for (int i = 0; i < this._size; i++) {
+            assertEquals(faceCoordinates[i].toOrthogonal().getX(), orthogonalX[i], 0);
+            assertEquals(faceCoordinates[i].toOrthogonal().getY(), orthogonalY[i], 0);
+            assertEquals(faceCoordinates[0].distance2DTo(faceCoordinates[i]), distances[i], 1e-6);
+        }
+    }
+
+    private static double[] random(int size) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) values[i] = Math.random() * 2000 - 1000;
+        return values;
+    }
+}
@@ -5,13 +5,18 @@ import ch.hsr.geohash.WGS84Point;
 import ch.hsr.geohash.util.VincentyGeodesy;
 import jp.go.aist.dggs.common.DGGS;
 import jp.go.aist.dggs.geometry.ISEA4DFaceCoordinates;
+import jp.go.aist.dggs.geometry.Morton2D;
+import jp.go.aist.dggs.geometry.Morton3D;
 import org.giscience.utils.geogrid.generic.Trigonometric;
 import org.giscience.utils.geogrid.geometry.FaceCoordinates;
 import org.giscience.utils.geogrid.geometry.GeoCoordinates;
 import org.giscience.utils.geogrid.projections.ISEAProjection;
 import org.junit.Test;
 
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.Random;
 import static org.junit.Assert.*;
 
 public class MortonUtilsTest {
@@ -37,6 +42,48 @@ public class MortonUtilsTest {
         assertEquals("1023", MortonUtils.getGreatestCommonAncestor(pdCodeList));
     }
 
+    @Test
+    public void getCommonAncestor_packed() {
+        for (int i = 0; i < 1000; i++) {
+            String prefix = randomPDCode3D("1", (int) (Math.random() * 12));
+            String[] pdCodes = new String[100];
+            long[] packedCodes = new long[pdCodes.length];
+            for (int j = 0; j < pdCodes.length; j++) {
+                pdCodes[j] = randomPDCode3D(prefix, (int) (Math.random() * (DGGS.MAX_PACKED_3D_RESOLUTION + 1 - prefix.length() + 1)));
+                packedCodes[j] = Morton3D.fromPDCode(pdCodes[j]);
+            }
+            String expected = MortonUtils.getGreatestCommonAncestor(pdCodes);
+            assertEquals(expected, Morton3D.toPDCode(MortonUtils.getGreatestCommonAncestor3D(packedCodes)));
+            assertEquals(expected, Morton3D.toPDCode(MortonUtils.getGreatestCommonAncestor3D(Arrays.stream(packedCodes).parallel())));
+        }
+
+        long[] packedCodes = {Morton3D.fromPDCode("1230"), Morton3D.fromPDCode("2230")};
+        assertEquals(MortonUtils.NO_COMMON_ANCESTOR, MortonUtils.getGreatestCommonAncestor3D(packedCodes));
+
+        packedCodes = new long[] {Morton2D.fromPDCode("1230123"), Morton2D.fromPDCode("12301"), Morton2D.fromPDCode("1230")};
+        assertEquals("1230", Morton2D.toPDCode(MortonUtils.getGreatestCommonAncestor2D(packedCodes)));
+        assertEquals("1230", Morton2D.toPDCode(MortonUtils.getGreatestCommonAncestor2D(Arrays.stream(packedCodes))));
+    }
+
+    private static String randomPDCode3D(String prefix, int levels) {
+        StringBuilder pdCode = new StringBuilder(prefix);
+        for (int level = prefix.length() - 1; level < prefix.length() - 1 + levels; level++) {
+            pdCode.append((int) (Math.random() * (level < DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION ? 4 : 8)));
+        }
+        return pdCode.toString();
+    }
+
+    @Test
+    public void faceTables() {
+        ISEAProjection p = new ISEAProjection();
+        for (int rhombus = 0; rhombus < 10; rhombus++) {
+            assertEquals(rhombus, DGGS.TRIANGLE_TO_RHOMBUS[DGGS.RHOMBUS_TO_UPPER_TRIANGLE[rhombus]]);
+            assertEquals(rhombus, DGGS.TRIANGLE_TO_RHOMBUS[DGGS.RHOMBUS_TO_LOWER_TRIANGLE[rhombus]]);
+            assertEquals(1, p.faceOrientation(DGGS.RHOMBUS_TO_UPPER_TRIANGLE[rhombus]));
+            assertEquals(-1, p.faceOrientation(DGGS.RHOMBUS_TO_LOWER_TRIANGLE[rhombus]));
+        }
+    }
+
     @Test
     public void convertToMorton() {
         String mortonCode = MortonUtils.toPDCode(new GeoCoordinates(34.6400223819d, 135.454610432d, 1.1d), 32);
@@ -81,6 +128,227 @@ public class MortonUtilsTest {
     }
 
 
+    @Test
+    public void toPackedPDCodes() {
+        final int size = 10000;
+        double[] lat = new double[size];
+        double[] lon = new double[size];
+        double[] height = new double[size];
+        for (int i = 0; i < size; i++) {
+            lat[i] = Math.random() * 179.99 - 89.995;
+            lon[i] = Math.random() * 360.0 - 180.0;
+            height[i] = Math.random() * DGGS.H_RANGE * 2 - DGGS.H_RANGE;
+        }
+
+        long[] packedCodes = new long[size];
+        long[] packedCodesParallel = new long[size];
+        long[] packedCodesBuffer = new long[size];
+        MortonUtils.toPackedPDCodes(lat, lon, height, DGGS.MAX_PACKED_3D_RESOLUTION, packedCodes);
+        MortonUtils.toPackedPDCodesParallel(lat, lon, height, DGGS.MAX_PACKED_3D_RESOLUTION, packedCodesParallel);
+        MortonUtils.toPackedPDCodes(DoubleBuffer.wrap(lat), DoubleBuffer.wrap(lon), DoubleBuffer.wrap(height), DGGS.MAX_PACKED_3D_RESOLUTION, packedCodesBuffer);
+        for (int i = 0; i < size; i++) {
+            GeoCoordinates c = new GeoCoordinates(lat[i], lon[i], height[i]);
+            assertEquals(MortonUtils.toPackedPDCode(c, DGGS.MAX_PACKED_3D_RESOLUTION), packedCodes[i]);
+            assertEquals(packedCodes[i], packedCodesParallel[i]);
+            assertEquals(packedCodes[i], packedCodesBuffer[i]);
+            assertEquals(MortonUtils.toPDCode(c, DGGS.MAX_PACKED_3D_RESOLUTION), Morton3D.toPDCode(packedCodes[i]));
+        }
+
+        MortonUtils.toPackedPDCodes(lat, lon, null, DGGS.MAX_PACKED_2D_RESOLUTION, packedCodes);
+        for (int i = 0; i < size; i++) {
+            GeoCoordinates c = new GeoCoordinates(lat[i], lon[i]);
+            assertEquals(MortonUtils.toPackedPDCode(c, DGGS.MAX_PACKED_2D_RESOLUTION), packedCodes[i]);
+        }
+    }
+
+    @Test
+    public void tryToPackedPDCodes() {
+        final int size = 10000;
+        double[] lat = new double[size];
+        double[] lon = new double[size];
+        double[] height = new double[size];
+        for (int i = 0; i < size; i++) {
+            lat[i] = Math.random() * 179.99 - 89.995;
+            lon[i] = Math.random() * 360.0 - 180.0;
+            height[i] = Math.random() * DGGS.H_RANGE * 2 - DGGS.H_RANGE;
+        }
+        lat[10] = 91.0;
+        lon[20] = Double.NaN;
+        height[30] = Double.POSITIVE_INFINITY;
+        height[40] = DGGS.H_RANGE * 2;
+        height[50] = DGGS.H_RANGE;
+
+        long[] packedCodes = new long[size];
+        long[] packedCodesParallel = new long[size];
+        byte[] status = new byte[size];
+        byte[] statusParallel = new byte[size];
+        assertEquals(5, MortonUtils.tryToPackedPDCodes(lat, lon, height, DGGS.MAX_PACKED_3D_RESOLUTION, packedCodes, status));
+        assertEquals(5, MortonUtils.tryToPackedPDCodesParallel(lat, lon, height, DGGS.MAX_PACKED_3D_RESOLUTION, packedCodesParallel, statusParallel));
+        assertEquals(MortonUtils.ENCODE_INVALID_COORDINATES, status[10]);
+        assertEquals(MortonUtils.ENCODE_INVALID_COORDINATES, status[20]);
+        assertEquals(MortonUtils.ENCODE_INVALID_COORDINATES, status[30]);
+        assertEquals(MortonUtils.ENCODE_OUT_OF_RANGE, status[40]);
+        assertEquals(MortonUtils.ENCODE_OUT_OF_RANGE, status[50]);
+        assertEquals(MortonUtils.INVALID_PACKED_PD_CODE, packedCodes[40]);
+        assertEquals(MortonUtils.INVALID_PACKED_PD_CODE, packedCodes[50]);
+        for (int i = 0; i < size; i++) {
+            assertEquals(status[i], statusParallel[i]);
+            assertEquals(packedCodes[i], packedCodesParallel[i]);
+            if (status[i] == MortonUtils.ENCODE_OK)
+                assertEquals(MortonUtils.toPackedPDCode(new GeoCoordinates(lat[i], lon[i], height[i]), DGGS.MAX_PACKED_3D_RESOLUTION), packedCodes[i]);
+        }
+    }
+
+    @Test
+    public void toGeoCoordinates() {
+        final int size = 10000;
+        long[] packedCodes = new long[size];
+        for (int i = 0; i < size; i++) {
+            GeoCoordinates c = new GeoCoordinates(Math.random() * 179.99 - 89.995, Math.random() * 360.0 - 180.0, Math.random() * DGGS.H_RANGE * 2 - DGGS.H_RANGE);
+            packedCodes[i] = MortonUtils.toPackedPDCode(c, DGGS.MAX_PACKED_3D_RESOLUTION);
+        }
+
+        double[] lat = new double[size], lon = new double[size], height = new double[size];
+        double[] geoCoordinates = new double[3];
+        MortonUtils.toGeoCoordinates(packedCodes, lat, lon, height);
+        for (int i = 0; i < size; i++) {
+            GeoCoordinates expected = MortonUtils.toGeoCoordinate(Morton3D.toPDCode(packedCodes[i]), DGGS.MAX_PACKED_3D_RESOLUTION);
+            assertEquals(expected.getLat(), lat[i], 0);
+            assertEquals(expected.getLon(), lon[i], 0);
+            assertEquals(expected.getHeight(), height[i], 0);
+
+            MortonUtils.toGeoCoordinate(packedCodes[i], geoCoordinates);
+            assertEquals(lat[i], geoCoordinates[0], 0);
+            assertEquals(lon[i], geoCoordinates[1], 0);
+            assertEquals(height[i], geoCoordinates[2], 0);
+        }
+    }
+
+    @Test
+    public void toFaceCoordinate_changeResolution() {
+        ISEA4DFaceCoordinates fc = new ISEA4DFaceCoordinates(3, 4294967295L, 2147483648L, 16777215L, 32);
+        ISEA4DFaceCoordinates coarse = MortonUtils.toFaceCoordinate(fc, 20);
+        assertEquals(3, coarse.getFace());
+        assertEquals(1048575L, coarse.getX());
+        assertEquals(524288L, coarse.getY());
+        assertEquals(4095L, coarse.getZ());
+        assertEquals(20, coarse.getResolution());
+
+        ISEA4DFaceCoordinates fine = MortonUtils.toFaceCoordinate(coarse, 32);
+        assertEquals(4294963200L, fine.getX());
+        assertEquals(2147483648L, fine.getY());
+        assertEquals(16773120L, fine.getZ());
+
+        assertEquals(0L, MortonUtils.toFaceCoordinate(fc, 8).getZ());
+
+        // the same cell as decoding the PD code at a lower resolution
+        for (int i = 0; i < 1000; i++) {
+            GeoCoordinates c = new GeoCoordinates(Math.random() * 179.99 - 89.995, Math.random() * 360.0 - 180.0, Math.random() * DGGS.H_RANGE * 2 - DGGS.H_RANGE);
+            String pdCode = MortonUtils.toPDCode(c, DGGS.MAX_XY_RESOLUTION);
+            ISEA4DFaceCoordinates expected = Morton3D.decode(pdCode, 15);
+            ISEA4DFaceCoordinates actual = MortonUtils.toFaceCoordinate(Morton3D.decode(pdCode, DGGS.MAX_XY_RESOLUTION), 15);
+            assertEquals(expected.getX(), actual.getX());
+            assertEquals(expected.getY(), actual.getY());
+            assertEquals(expected.getZ(), actual.getZ());
+        }
+    }
+
+    @Test
+    public void toFaceCoordinates_changeResolution() {
+        long[] x = {4294967295L, 0L, 123456789L};
+        long[] y = {2147483648L, 1L, 987654321L};
+        long[] z = {16777215L, 0L, 1234567L};
+        long[] x2 = x.clone(), y2 = y.clone();
+        MortonUtils.toFaceCoordinates(x, y, z, 32, 12);
+        MortonUtils.toFaceCoordinates(x2, y2, null, 32, 12);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(x[i], x2[i]);
+            assertEquals(y[i], y2[i]);
+        }
+        assertArrayEquals(new long[] {4095L, 0L, 117L}, x);
+        assertArrayEquals(new long[] {2048L, 0L, 941L}, y);
+        assertArrayEquals(new long[] {15L, 0L, 1L}, z);
+    }
+
+    @Test
+    public void toGeoCoordinate_height() {
+        // # The height is decoded bit-identically to (z * 2 * H_RANGE) / maxZ - H_RANGE
+        Random random = new Random(17);
+        for (int res = DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION + 2; res <= DGGS.MAX_XY_RESOLUTION; res++) {
+            long maxZ = (long) Math.pow(2, res - (DGGS.MAX_XY_RESOLUTION - DGGS.MAX_Z_RESOLUTION)) - 1;
+            for (int i = 0; i < 100; i++) {
+                long z = (long) (random.nextDouble() * (maxZ + 1));
+                GeoCoordinates c = MortonUtils.toGeoCoordinate(new ISEA4DFaceCoordinates(4, 0, 0, z, res));
+                assertEquals((z * 2.0d * DGGS.H_RANGE) / maxZ - DGGS.H_RANGE, c.getHeight(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void toFaceCoordinate_farEdge() {
+        // # The far edge of Z is kept as 2^MAX_Z_RESOLUTION
+        long[] faceCoordinates = new long[4];
+        MortonUtils.toFaceCoordinate(new ISEAProjection(), new GeoCoordinates(35.6, 139.7, DGGS.H_RANGE), faceCoordinates);
+        assertEquals(1L << DGGS.MAX_Z_RESOLUTION, faceCoordinates[3]);
+
+        try {
+            MortonUtils.toFaceCoordinate(new ISEAProjection(), new GeoCoordinates(35.6, 139.7, DGGS.H_RANGE * 2), faceCoordinates);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Z = " + DGGS.TOTAL_RANGE_Z * 1.5));
+        }
+    }
+
+    @Test
+    public void toFaceCoordinate_projectionThrows() {
+        GeoCoordinates c = new GeoCoordinates(35.6, 139.7, DGGS.H_RANGE * 2);
+        try {
+            MortonUtils.toFaceCoordinate(new ISEAProjection(), c);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Z = " + DGGS.TOTAL_RANGE_Z * 1.5));
+        }
+
+        // # The signature without a projection still returns null
+        assertNull(MortonUtils.toFaceCoordinate(c));
+    }
+
+    @Test
+    public void toGeoCoordinate_newtonIterations() {
+        ISEAProjection p = new ISEAProjection();
+        GeoCoordinates c0 = new GeoCoordinates(35.6, 139.7, 0.0);
+        MortonUtils.toGeoCoordinate(p, MortonUtils.toFaceCoordinate(p, c0));
+        assertEquals(0, p.inverseProjections());
+
+        p.enableStatistics();
+        Random random = new Random(9);
+        for (int i = 0; i < 10000; i++) {
+            GeoCoordinates c = new GeoCoordinates(random.nextDouble() * 179.99 - 89.995, random.nextDouble() * 360.0 - 180.0, 0.0);
+            GeoCoordinates coords = MortonUtils.toGeoCoordinate(p, MortonUtils.toFaceCoordinate(p, c));
+            assertTrue(Math.abs(coords.getLat() - c.getLat()) < this._precision);
+        }
+        assertEquals(10000, p.inverseProjections());
+        assertTrue(p.newtonIterations() <= 3 * p.inverseProjections());
+    }
+
+    @Test
+    public void toFaceCoordinate_projection() {
+        ISEAProjection p = new ISEAProjection(10.0, -11.25);
+        GeoCoordinates c = new GeoCoordinates(35.6, 139.7, 10.0);
+
+        ISEA4DFaceCoordinates shared = MortonUtils.toFaceCoordinate(c);
+        ISEA4DFaceCoordinates fresh = MortonUtils.toFaceCoordinate(new ISEAProjection(), c);
+        assertEquals(shared.getFace(), fresh.getFace());
+        assertEquals(shared.getX(), fresh.getX());
+        assertEquals(shared.getY(), fresh.getY());
+        assertEquals(shared.getZ(), fresh.getZ());
+
+        ISEA4DFaceCoordinates rotated = MortonUtils.toFaceCoordinate(p, c);
+        GeoCoordinates back = MortonUtils.toGeoCoordinate(p, rotated);
+        assertEquals(c.getLat(), back.getLat(), 1e-6);
+        assertEquals(c.getLon(), back.getLon(), 1e-6);
+    }
+
     public void convertToMorton_TriangleCheck() {
         double _goldenRatio = (1 + Math.sqrt(5)) / 2.;
         double F_DEG = Math.toDegrees(Math.atan(1 / (2 * Math.pow(_goldenRatio, 2))));
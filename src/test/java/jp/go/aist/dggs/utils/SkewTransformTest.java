@@ -0,0 +1,37 @@
+package jp.go.aist.dggs.utils;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Test;
+
+import static jp.go.aist.dggs.common.DGGS.*;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ * */
+public class SkewTransformTest {
+    private final int _iterations = 100000;
+
+    @Test
+    public void toSkewed_equalsMatrix() {
+        for (int i = 0; i < this._iterations; i++) {
+            double x = Math.random() * TOTAL_RANGE;
+            double y = Math.random() * TOTAL_RANGE;
+            RealMatrix rmx = MATRIX_A.multiply(MatrixUtils.createColumnRealMatrix(new double[] {x, y}));
+            assertEquals(rmx.getEntry(0, 0), SkewTransform.toSkewedX(x, y), 0);
+            assertEquals(rmx.getEntry(1, 0), SkewTransform.toSkewedY(x, y), 0);
+        }
+    }
+
+    @Test
+    public void toOrthogonal_equalsMatrix() {
+        for (int i = 0; i < this._iterations; i++) {
+            double x = Math.random() * TOTAL_RANGE;
+            double y = Math.random() * TOTAL_RANGE;
+            RealMatrix rmx = MATRIX_A_INVERSE.multiply(MatrixUtils.createColumnRealMatrix(new double[] {x, y}));
+            assertEquals(rmx.getEntry(0, 0), SkewTransform.toOrthogonalX(x, y), 0);
+            assertEquals(rmx.getEntry(1, 0), SkewTransform.toOrthogonalY(x, y), 0);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.giscience.utils.geogrid.projections;
+
+import org.giscience.utils.geogrid.generic.Trigonometric;
+import org.giscience.utils.geogrid.geo.WGS84;
+import org.giscience.utils.geogrid.geometry.FaceCoordinates;
+import org.giscience.utils.geogrid.geometry.GeoCoordinates;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * @author TaehoonKim AIST DPRT, Research Assistant
+ * */
+public class ISEAProjectionTest {
+    private final int _iterations = 100000;
+
+    @Test
+    public void sphereToIcosahedron_equalsDegrees() {
+        ISEAProjection p = new ISEAProjection();
+        Random random = new Random(8);
+        for (int i = 0; i < this._iterations; i++) {
+            GeoCoordinates c = new GeoCoordinates(random.nextDouble() * 180.0 - 90.0, random.nextDouble() * 360.0 - 180.0);
+            FaceCoordinates fc = p.sphereToIcosahedron(c);
+            double[] expected = Degrees.sphereToIcosahedron(p, fc.getFace(), c.getLat(), c.getLon());
+            assertNotNull(expected);
+            assertEquals(expected[0], fc.getX(), 1e-12);
+            assertEquals(expected[1], fc.getY(), 1e-12);
+        }
+    }
+
+    @Test
+    public void icosahedronToSphere_equalsDegrees() {
+        ISEAProjection p = new ISEAProjection();
+        Random random = new Random(8);
+        for (int i = 0; i < this._iterations; i++) {
+            GeoCoordinates c = new GeoCoordinates(random.nextDouble() * 179.98 - 89.99, random.nextDouble() * 360.0 - 180.0);
+            FaceCoordinates fc = p.sphereToIcosahedron(c);
+            GeoCoordinates result = p.icosahedronToSphere(fc);
+            double[] expected = Degrees.icosahedronToSphere(p, fc.getFace(), fc.getX(), fc.getY());
+            assertEquals(expected[0], result.getLat(), 1e-9);
+            assertEquals(0, Math.IEEEremainder(expected[1] - result.getLon(), 360), 1e-9);
+        }
+    }
+
+    /**
+     * The projection computed in degrees, as before the computation in radians.
+     */
+    private static final class Degrees {
+        private static final double _goldenRatio = (1 + Math.sqrt(5)) / 2.;
+        private static final double _RR_earth = (1 / (2 * Math.sqrt(5)) + 1 / 6.) * Math.sqrt(Math.PI * Math.sqrt(3)); // R' / R
+        private static final double _R_earth = WGS84.radiusAuthalic; // R
+        private static final double _R = _RR_earth * _R_earth; // R'
+        private static final int _G = 36; // G
+        private static final int _theta = 30; // \theta
+        private static final double __F = Trigonometric.atan(1 / (2 * Math.pow(_goldenRatio, 2))); // F
+        private static final double _g = __F + 2 * Trigonometric.atan(_goldenRatio) - 90; // g
+        private static final double _precision = 1e-9;
+        private static final int _AzMax = 2 * (90 - _theta); // 2 (90 - \theta)
+        private static final double _tan_g = Trigonometric.tan(_g); // \tan g
+        private static final double _cosG = Trigonometric.cos(_G); // \cos G
+        private static final double _cotTheta = Trigonometric.cot(_theta); // \cot \theta
+        private static final double _2cotTheta = 2 * _cotTheta; // 2 \cot \theta
+        private static final double _pi_R_earth2_180 = Math.PI * Math.pow(_R_earth, 2) / 180; // \pi R^2 / 180
+        private static final double _R_tan_g = _R * _tan_g; // R' \tan g
+        private static final double _R_tan_g_2 = Math.pow(_R_tan_g, 2); // R'^2 * \tan^2 g
+        private static final double _sinG_cos_g = Trigonometric.sin(_G) * Trigonometric.cos(_g); // \sin G \cos g
+        private static final double _G_180 = _G - 180.; // G - 180
+
+        static double[] sphereToIcosahedron(ISEAProjection p, int face, double lat, double lon) {
+            double sinLat = Trigonometric.sin(lat);
+            double cosLat = Trigonometric.cos(lat);
+            double lat0 = p.getLat(face);
+            double lon0 = p.getLon(face);
+            double sinLat0 = Trigonometric.sin(lat0);
+            double cosLat0 = Trigonometric.cos(lat0);
+            double sinLonLon0 = Trigonometric.sin(lon - lon0);
+            double cosLonLon0 = Trigonometric.cos(lon - lon0);
+            double Az_earth = Trigonometric.atan2(cosLat * sinLonLon0, cosLat0 * sinLat - sinLat0 * cosLat * cosLonLon0); // Az
+            double AzAdjustment = (p.faceOrientation(face) > 0) ? 0 : 180;
+            Az_earth += AzAdjustment;
+            while (Az_earth < 0) {
+                AzAdjustment += _AzMax;
+                Az_earth += _AzMax;
+            }
+            while (Az_earth > _AzMax) {
+                AzAdjustment -= _AzMax;
+                Az_earth -= _AzMax;
+            }
+            double sinAz_earth = Trigonometric.sin(Az_earth); // \sin Az
+            double cosAz_earth = Trigonometric.cos(Az_earth); // \cos Az
+            double z = Trigonometric.acos(sinLat0 * sinLat + cosLat0 * cosLat * cosLonLon0); // z
+            double q = Trigonometric.atan2(_tan_g, cosAz_earth + sinAz_earth * _cotTheta); // q
+            if (z > q + _precision) return null;
+            double H = _compute_H(sinAz_earth, cosAz_earth); // H
+            double area = (Az_earth + _G_180 + H) * _pi_R_earth2_180; // A_G and A_{ABD}
+            double Az = Trigonometric.atan2(2 * area, _R_tan_g_2 - area * _2cotTheta); // Az'
+            double f = _compute_f(Trigonometric.sin(Az), Trigonometric.cos(Az), sinAz_earth, cosAz_earth); // f
+            double rho = _RR_earth * 2 * f * Trigonometric.sin(z / 2.); // \rho
+            Az -= AzAdjustment;
+            return new double[] {rho * Trigonometric.sin(Az), rho * Trigonometric.cos(Az)};
+        }
+
+        static double[] icosahedronToSphere(ISEAProjection p, int face, double x, double y) {
+            double Az = Trigonometric.atan2(x, y); // Az'
+            double rho = Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2)); // \rho
+            double AzAdjustment = (p.faceOrientation(face) > 0) ? 0 : 180;
+            Az += AzAdjustment;
+            while (Az < 0) {
+                AzAdjustment += _AzMax;
+                Az += _AzMax;
+            }
+            while (Az > _AzMax) {
+                AzAdjustment -= _AzMax;
+                Az -= _AzMax;
+            }
+            double sinAz = Trigonometric.sin(Az); // \sin Az'
+            double cosAz = Trigonometric.cos(Az); // \cos Az'
+            double area = _R_tan_g_2 / (2 * (cosAz / sinAz + _cotTheta)); // A_G or A_{ABD}
+            double deltaAz = 10 * _precision;
+            double area_pi_R_earth2_180_G_180 = area / _pi_R_earth2_180 - _G_180;
+            double Az_earth = Az;
+            while (Math.abs(deltaAz) > _precision) {
+                double H = _compute_H(Trigonometric.sin(Az_earth), Trigonometric.cos(Az_earth)); // H
+                double FAz_earth = area_pi_R_earth2_180_G_180 - H - Az_earth; // F(Az) or g(Az)
+                double F2Az_earth = (Trigonometric.cos(Az_earth) * _sinG_cos_g + Trigonometric.sin(Az_earth) * _cosG) / Trigonometric.sin(H) - 1; // F'(Az) or g'(Az)
+                deltaAz = - FAz_earth / F2Az_earth; // \Delta Az^0 or \Delta Az
+                Az_earth += deltaAz;
+            }
+            double f = _compute_f(sinAz, cosAz, Trigonometric.sin(Az_earth), Trigonometric.cos(Az_earth)); // f
+            double z = 2 * Trigonometric.asin(rho / (_RR_earth * 2 * f)); // z
+            Az_earth -= AzAdjustment;
+            double sinLat0 = Trigonometric.sin(p.getLat(face)); // \sin \phi_0
+            double cosLat0 = Trigonometric.cos(p.getLat(face)); // \cos \phi_0
+            double sinZ = Trigonometric.sin(z); // \sin z
+            double cosZ = Trigonometric.cos(z); // \cos z
+            double lat = Trigonometric.asin(sinLat0 * cosZ + cosLat0 * sinZ * Trigonometric.cos(Az_earth)); // \phi
+            double lon = p.getLon(face) + Trigonometric.atan2(Trigonometric.sin(Az_earth) * sinZ * cosLat0, cosZ - sinLat0 * Trigonometric.sin(lat)); // \lambda
+            return new double[] {lat, lon};
+        }
+
+        private static double _compute_H(double sinAz_earth, double cosAz_earth) {
+            return Trigonometric.acos(sinAz_earth * _sinG_cos_g - cosAz_earth * _cosG); // H
+        }
+
+        private static double _compute_f(double sinAz, double cosAz, double sinAz_earth, double cosAz_earth) {
+            double d = _R_tan_g / (cosAz + sinAz * _cotTheta); // d'
+            double q = Trigonometric.atan2(_tan_g, cosAz_earth + sinAz_earth * _cotTheta); // q
+            return d / (2 * _R * Trigonometric.sin(q / 2)); // f
+        }
+    }
+}